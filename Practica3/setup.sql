@@ -16,6 +16,7 @@ ALTER TABLE character DROP CONSTRAINT IF EXISTS character_id_origin_fkey;
 ALTER TABLE character DROP CONSTRAINT IF EXISTS character_id_location_fkey;
 
 /* Eliminar las tablas en el orden correcto para evitar conflictos por relaciones */
+DROP TABLE IF EXISTS ingest_checkpoint;
 DROP TABLE IF EXISTS character_in_episode;
 DROP TABLE IF EXISTS character;
 DROP TABLE IF EXISTS episode;
@@ -66,6 +67,16 @@ CREATE TABLE character_in_episode (
     PRIMARY KEY (id_character, id_episode)
 );
 
+/* Puntos de control de la recarga reanudable: por entidad, la última página confirmada,
+   el total de páginas y las filas insertadas hasta ahora. Se vacía al terminar la recarga. */
+CREATE TABLE ingest_checkpoint (
+    entity VARCHAR(20) PRIMARY KEY,
+    last_page INT NOT NULL,
+    total_pages INT,
+    rows_loaded INT NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP NOT NULL DEFAULT now()
+);
+
 
 /* Insertar la ubicación "unknown" */
 INSERT INTO location (id, name, type, dimension) VALUES (0, 'unknown', NULL, NULL);
@@ -78,6 +89,14 @@ GRANT USAGE ON SCHEMA public TO usuariodev;
 GRANT SELECT, INSERT, UPDATE, DELETE ON ALL TABLES IN SCHEMA public TO usuariodev;
 ALTER DEFAULT PRIVILEGES IN SCHEMA public GRANT SELECT, INSERT, UPDATE, DELETE ON TABLES TO usuariodev;
 
+/* La recarga a la sombra (BlueGreenLoad) crea tablas nuevas y sustituye las actuales renombrándolas,
+   así que usuariodev necesita crear tablas en el esquema y ser propietario de las que se intercambian. */
+GRANT CREATE ON SCHEMA public TO usuariodev;
+ALTER TABLE location OWNER TO usuariodev;
+ALTER TABLE episode OWNER TO usuariodev;
+ALTER TABLE character OWNER TO usuariodev;
+ALTER TABLE character_in_episode OWNER TO usuariodev;
+
 
 
 /* Procedures a continuación */
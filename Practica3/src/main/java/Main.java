@@ -1,11 +1,12 @@
 import java.util.Scanner;
 
-import services.DatabaseService;
 import services.EpisodeService;
 import services.LocationService;
 import services.CharacterService;
+import utils.DBUtils;
 import utils.HibernateUtils;
 import utils.IntValidator;
+import utils.KeysetPager;
 import utils.Menus;
 
 /**
@@ -100,7 +101,18 @@ public class Main {
             		} while (eleccion != 6);
             		break;
             	case 4:
-            		DatabaseService.fillDatabase();
+            		Menus.menuCargaBD(scanner);
+            		break;
+            	case 5:
+            		System.out.print("Filas por página (" + KeysetPager.DEFAULT_PAGE_SIZE + " por defecto, máximo "
+            				+ KeysetPager.MAX_PAGE_SIZE + "): ");
+            		int filas = IntValidator.validarEntero(scanner);
+            		if (filas > KeysetPager.MAX_PAGE_SIZE) {
+            			System.out.println("Como mucho se pueden mostrar " + KeysetPager.MAX_PAGE_SIZE + " filas por página.");
+            		} else {
+            			KeysetPager.setPageSize(filas > 0 ? filas : KeysetPager.DEFAULT_PAGE_SIZE);
+            		}
+            		System.out.println("Los listados mostrarán " + KeysetPager.getPageSize() + " filas por página.");
             		break;
                 case 0:
                     System.out.println("Saliendo del programa...");
@@ -112,5 +124,6 @@ public class Main {
 
         scanner.close();
         HibernateUtils.shutdown(); // libera recursos y cierra Hibernate al salir
+        DBUtils.shutdown(); // cierra las conexiones del pool
     }
 }
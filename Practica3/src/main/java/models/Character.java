@@ -1,11 +1,32 @@
 package models;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import java.io.Serializable;
 import java.util.List;
 
 @Entity
 @Table(name = "character")
+@Cacheable // los personajes ya leídos por id (detalle, modificación, borrado) se sirven desde la caché
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+// Listados y búsquedas: solo las columnas que se muestran, proyectadas en CharacterSummary
+@NamedQuery(name = "Character.pagina", query = "SELECT new models.CharacterSummary(c.id, c.name, c.status, c.species, c.type, c.gender) "
+        + "FROM Character c WHERE c.id > :despues ORDER BY c.id")
+@NamedQuery(name = "Character.buscarPorNombre", query = "SELECT new models.CharacterSummary(c.id, c.name, c.status, c.species, c.type, c.gender) "
+        + "FROM Character c WHERE LOWER(c.name) LIKE LOWER(:name) ORDER BY c.id")
+// Para mostrar un personaje con sus localizaciones (origen y actual) en la misma consulta
+@NamedEntityGraph(name = "Character.localizaciones", attributeNodes = {
+    @NamedAttributeNode("origin"),
+    @NamedAttributeNode("location")
+})
+// Para el borrado, que muestra también sus episodios
+@NamedEntityGraph(name = "Character.localizacionesYEpisodios", attributeNodes = {
+    @NamedAttributeNode("origin"),
+    @NamedAttributeNode("location"),
+    @NamedAttributeNode("episodes")
+})
 public class Character implements Serializable {
 
     @Id
@@ -25,15 +46,16 @@ public class Character implements Serializable {
     @Column(nullable = false)
     private String gender;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "id_origin")
     private Location origin;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "id_location")
     private Location location;
     
     @ManyToMany
+    @BatchSize(size = 50)
     @JoinTable(
         name = "character_in_episode",
         joinColumns = @JoinColumn(name = "id_character"),
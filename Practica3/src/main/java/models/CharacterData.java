@@ -1,7 +1,5 @@
 package models;
 
-import java.util.List;
-
 public class CharacterData {
     private int id;
     private String name;
@@ -11,8 +9,8 @@ public class CharacterData {
     private String gender;
     private int id_origin;
     private int id_location;
-    private List<Integer> episodeIds;
-    public CharacterData(int id, String name, String status, String species, String type, String gender, int id_origin, int id_location, List<Integer> episodeIds) {
+    private int[] episodeIds;
+    public CharacterData(int id, String name, String status, String species, String type, String gender, int id_origin, int id_location, int[] episodeIds) {
         this.setId(id);
         this.setName(name);
         this.setStatus(status);
@@ -71,10 +69,10 @@ public class CharacterData {
 	public void setId_location(int id_location) {
 		this.id_location = id_location;
 	}
-	public List<Integer> getEpisodeIds() {
+	public int[] getEpisodeIds() {
 		return episodeIds;
 	}
-	public void setEpisodeIds(List<Integer> episodeIds) {
+	public void setEpisodeIds(int[] episodeIds) {
 		this.episodeIds = episodeIds;
 	}
 }
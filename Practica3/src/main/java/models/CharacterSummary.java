@@ -0,0 +1,8 @@
+package models;
+
+/**
+ * Datos de un personaje que se muestran en listados y búsquedas, cargados directamente con
+ * "SELECT new" (solo estas columnas, sin crear la entidad ni sus relaciones).
+ */
+public record CharacterSummary(int id, String name, String status, String species, String type, String gender) {
+}
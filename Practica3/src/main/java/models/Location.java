@@ -1,11 +1,19 @@
 package models;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import java.io.Serializable;
 import java.util.List;
 
 @Entity
 @Table(name = "location")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@BatchSize(size = 50) // las localizaciones perezosas de varios personajes se cargan juntas, de 50 en 50
+@NamedQuery(name = "Location.pagina", query = "SELECT new models.LocationSummary(l.id, l.name, l.type, l.dimension) "
+        + "FROM Location l WHERE l.id > :despues ORDER BY l.id")
 public class Location implements Serializable {
 
     @Id
@@ -0,0 +1,8 @@
+package models;
+
+/**
+ * Datos de una localización que se muestran en listados y búsquedas, cargados directamente con
+ * "SELECT new" (solo estas columnas, sin crear la entidad ni sus colecciones de personajes).
+ */
+public record LocationSummary(int id, String name, String type, String dimension) {
+}
@@ -0,0 +1,33 @@
+package services;
+
+import models.CharacterData;
+import models.EpisodeData;
+import models.LocationData;
+import utils.ApiClient;
+import utils.ApiDecoder;
+import utils.RecordSink;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * Origen de datos que descarga las entidades de la API de Rick and Morty
+ * (páginas en paralelo, decodificadas en streaming y entregadas en orden).
+ */
+public class ApiSource implements IngestSource {
+
+    @Override
+    public void locations(RecordSink<? super LocationData> sink) throws IOException, InterruptedException, SQLException {
+        ApiClient.fetchAllPages("location", ApiDecoder::readLocation, sink);
+    }
+
+    @Override
+    public void episodes(RecordSink<? super EpisodeData> sink) throws IOException, InterruptedException, SQLException {
+        ApiClient.fetchAllPages("episode", ApiDecoder::readEpisode, sink);
+    }
+
+    @Override
+    public void characters(RecordSink<? super CharacterData> sink) throws IOException, InterruptedException, SQLException {
+        ApiClient.fetchAllPages("character", ApiDecoder::readCharacter, sink);
+    }
+}
@@ -0,0 +1,150 @@
+package services;
+
+import models.Character;
+import utils.HibernateUtils;
+
+import org.hibernate.HibernateException;
+import org.hibernate.StatelessSession;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Diccionario en memoria de los valores distintos de los atributos de los personajes
+ * (status, species, type y gender), con cuántos personajes tienen cada uno.
+ * - Se carga de la BD la primera vez que se pide (una consulta agrupada por atributo).
+ * - Después se mantiene al día sin volver a la BD: CharacterService le avisa al insertar,
+ *   modificar o borrar un personaje, así que los selectores no recorren la tabla cada vez.
+ * - Las cargas con JDBC lo invalidan al terminar y se vuelve a cargar en el siguiente uso.
+ * Como en la antigua consulta, los valores nulos o vacíos no se guardan.
+ */
+public class AttributeDictionary {
+
+    public static final String[] FIELDS = {"status", "species", "type", "gender"};
+
+    // atributo -> (valor -> nº de personajes), con los valores ordenados
+    private static final Map<String, TreeMap<String, Integer>> counts = new LinkedHashMap<>();
+    private static boolean loaded;
+
+    /**
+     * Valores de los atributos de un personaje, para saber qué restar al modificarlo.
+     */
+    public record Attributes(String status, String species, String type, String gender) {
+        public static Attributes of(Character c) {
+            return new Attributes(c.getStatus(), c.getSpecies(), c.getType(), c.getGender());
+        }
+
+        String get(String field) {
+            return switch (field) {
+                case "status" -> status;
+                case "species" -> species;
+                case "type" -> type;
+                case "gender" -> gender;
+                default -> throw new IllegalArgumentException("Atributo desconocido: " + field);
+            };
+        }
+    }
+
+    /**
+     * @param field Atributo ("status", "species", "type" o "gender")
+     * @return Valores distintos que tiene algún personaje, ordenados
+     */
+    public static synchronized List<String> values(String field) {
+        return new ArrayList<>(dictionary(field).keySet());
+    }
+
+    /**
+     * @param field Atributo
+     * @param value Valor
+     * @return Personajes que tienen ese valor en el atributo
+     */
+    public static synchronized int count(String field, String value) {
+        return dictionary(field).getOrDefault(value, 0);
+    }
+
+    /**
+     * Suma los valores de un personaje recién insertado (tras confirmar la transacción).
+     */
+    public static synchronized void add(Character c) {
+        if (loaded) {
+            apply(Attributes.of(c), 1);
+        }
+    }
+
+    /**
+     * Resta los valores de un personaje borrado (tras confirmar la transacción).
+     */
+    public static synchronized void remove(Character c) {
+        if (loaded) {
+            apply(Attributes.of(c), -1);
+        }
+    }
+
+    /**
+     * Cambia los valores de un personaje modificado (tras confirmar la transacción).
+     * @param before Valores que tenía antes de la modificación
+     * @param after Personaje ya modificado
+     */
+    public static synchronized void update(Attributes before, Character after) {
+        if (loaded) {
+            apply(before, -1);
+            apply(Attributes.of(after), 1);
+        }
+    }
+
+    /**
+     * Descarta el diccionario; se vuelve a leer de la BD en el siguiente uso.
+     * Para cuando la tabla se ha escrito sin pasar por CharacterService.
+     */
+    public static synchronized void invalidate() {
+        loaded = false;
+        counts.clear();
+    }
+
+    private static TreeMap<String, Integer> dictionary(String field) {
+        if (!loaded) {
+            load();
+        }
+        TreeMap<String, Integer> values = counts.get(field);
+        if (values == null) {
+            throw new IllegalArgumentException("Atributo desconocido: " + field);
+        }
+        return values;
+    }
+
+    private static void apply(Attributes attributes, int delta) {
+        for (String field : FIELDS) {
+            String value = attributes.get(field);
+            if (value == null || value.isEmpty()) {
+                continue;
+            }
+            // devolver null quita la entrada cuando ya no queda ningún personaje con ese valor
+            counts.get(field).compute(value, (v, old) -> {
+                int n = (old == null ? 0 : old) + delta;
+                return n > 0 ? n : null;
+            });
+        }
+    }
+
+    private static void load() {
+        counts.clear();
+        try (StatelessSession session = HibernateUtils.getStatelessSession()) {
+            for (String field : FIELDS) {
+                String hql = "SELECT c." + field + ", COUNT(c) FROM Character c WHERE c." + field + " IS NOT NULL AND c."
+                        + field + " <> '' GROUP BY c." + field;
+                TreeMap<String, Integer> values = new TreeMap<>();
+                for (Object[] row : session.createQuery(hql, Object[].class).list()) {
+                    values.put((String) row[0], ((Number) row[1]).intValue());
+                }
+                counts.put(field, values);
+            }
+            loaded = true;
+        } catch (HibernateException e) {
+            counts.clear();
+            throw e;
+        }
+    }
+}
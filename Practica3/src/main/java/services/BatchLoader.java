@@ -0,0 +1,119 @@
+package services;
+
+import models.CharacterData;
+import models.EpisodeData;
+import models.LocationData;
+import utils.BatchInserter;
+import utils.RecordSource;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Carga de las tablas con INSERT por lotes (addBatch/executeBatch).
+ * Usa las mismas inserciones que los procedimientos add_*, con ON CONFLICT DO NOTHING,
+ * pero como sentencias simples para poder agruparlas en lotes.
+ */
+public class BatchLoader implements TableLoader {
+
+    public static final String INSERT_LOCATION =
+            "INSERT INTO location (id, name, type, dimension) VALUES (?, ?, ?, ?) ON CONFLICT (id) DO NOTHING";
+    public static final String INSERT_EPISODE =
+            "INSERT INTO episode (id, name, air_date, episode) VALUES (?, ?, ?, ?) ON CONFLICT (id) DO NOTHING";
+    public static final String INSERT_CHARACTER =
+            "INSERT INTO character (id, name, status, species, type, gender, id_origin, id_location) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT (id) DO NOTHING";
+    public static final String INSERT_CHARACTER_IN_EPISODE =
+            "INSERT INTO character_in_episode (id_character, id_episode) VALUES (?, ?) ON CONFLICT DO NOTHING";
+
+    private final int batchSize;
+
+    /**
+     * @param batchSize Filas por lote
+     */
+    public BatchLoader(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Inserta por lotes las localizaciones del origen según van llegando.
+     */
+    @Override
+    public int loadLocations(Connection conn, RecordSource<LocationData> source) throws SQLException, IOException, InterruptedException {
+        try (BatchInserter<LocationData> locations = new BatchInserter<>(conn, "location", INSERT_LOCATION, batchSize, BatchLoader::bindLocation)) {
+            source.forEach(locations::add);
+            locations.flush();
+            return locations.getInserted();
+        }
+    }
+
+    /**
+     * Inserta por lotes los episodios del origen según van llegando.
+     */
+    @Override
+    public int loadEpisodes(Connection conn, RecordSource<EpisodeData> source) throws SQLException, IOException, InterruptedException {
+        try (BatchInserter<EpisodeData> episodes = new BatchInserter<>(conn, "episode", INSERT_EPISODE, batchSize, BatchLoader::bindEpisode)) {
+            source.forEach(episodes::add);
+            episodes.flush();
+            return episodes.getInserted();
+        }
+    }
+
+    /**
+     * Inserta por lotes los personajes junto a sus relaciones con episodios.
+     * Los lotes de character_in_episode esperan a que se envíe antes el lote de personajes pendiente.
+     */
+    @Override
+    public int loadCharacters(Connection conn, RecordSource<CharacterData> source) throws SQLException, IOException, InterruptedException {
+        try (BatchInserter<CharacterData> characters = new BatchInserter<>(conn, "character", INSERT_CHARACTER, batchSize, BatchLoader::bindCharacter);
+             BatchInserter<int[]> relations = new BatchInserter<>(conn, "character_in_episode", INSERT_CHARACTER_IN_EPISODE, batchSize, BatchLoader::bindRelation)) {
+            relations.after(characters);
+            // addBatch copia los parámetros, así que se puede reutilizar el mismo par para todas las filas
+            int[] pair = new int[2];
+            source.forEach(ch -> {
+                characters.add(ch);
+                pair[0] = ch.getId();
+                for (int epId : ch.getEpisodeIds()) {
+                    pair[1] = epId;
+                    relations.add(pair);
+                }
+            });
+            characters.flush();
+            relations.flush();
+            System.out.println("Relaciones personaje-episodio añadidas: " + relations.getInserted());
+            return characters.getInserted();
+        }
+    }
+
+    public static void bindLocation(PreparedStatement ps, LocationData loc) throws SQLException {
+        ps.setInt(1, loc.getId());
+        ps.setString(2, loc.getName());
+        ps.setString(3, loc.getType());
+        ps.setString(4, loc.getDimension());
+    }
+
+    public static void bindEpisode(PreparedStatement ps, EpisodeData ep) throws SQLException {
+        ps.setInt(1, ep.getId());
+        ps.setString(2, ep.getName());
+        ps.setDate(3, ep.getAir_date());
+        ps.setString(4, ep.getEpisode());
+    }
+
+    public static void bindCharacter(PreparedStatement ps, CharacterData ch) throws SQLException {
+        ps.setInt(1, ch.getId());
+        ps.setString(2, ch.getName());
+        ps.setString(3, ch.getStatus());
+        ps.setString(4, ch.getSpecies());
+        ps.setString(5, ch.getType());
+        ps.setString(6, ch.getGender());
+        ps.setInt(7, ch.getId_origin());
+        ps.setInt(8, ch.getId_location());
+    }
+
+    public static void bindRelation(PreparedStatement ps, int[] pair) throws SQLException {
+        ps.setInt(1, pair[0]);
+        ps.setInt(2, pair[1]);
+    }
+}
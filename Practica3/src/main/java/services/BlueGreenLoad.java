@@ -0,0 +1,239 @@
+package services;
+
+import utils.ApiClient;
+import utils.DBUtils;
+import utils.IngestMetrics;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Recarga completa "blue/green": los datos nuevos se cargan en copias a la sombra de las tablas
+ * (location_new, episode_new, character_new y character_in_episode_new) y al final se intercambian
+ * con las actuales mediante renombrados, en una transacción corta.
+ * - Mientras se descarga y se copia, las tablas en uso no se tocan: los lectores siguen viendo los datos anteriores
+ *   completos y no esperan a la carga.
+ * - Las sombras se crean sin claves; las claves primarias y ajenas (con sus índices) se añaden cuando ya están
+ *   todos los datos, que es más rápido que mantenerlas fila a fila.
+ * - El intercambio solo toca el catálogo. Espera los bloqueos como mucho {@link #LOCK_TIMEOUT}; si hay una consulta
+ *   larga en curso el intercambio se deshace y se reintenta, para no dejar en cola a los lectores que lleguen detrás.
+ * Los lectores ven o todos los datos antiguos o todos los nuevos, nunca un estado intermedio.
+ * El usuario de la aplicación debe ser propietario de las tablas para poder renombrarlas y borrarlas (ver setup.sql).
+ */
+public class BlueGreenLoad {
+
+    public static final String LOCK_TIMEOUT = "2s";
+    public static final int SWAP_ATTEMPTS = 5;
+
+    static final String SUFFIX = "_new";
+
+    // Ordenadas de menos a más dependientes
+    static final String[] TABLES = {"location", "episode", "character", "character_in_episode"};
+
+    private static final String LOCK_NOT_AVAILABLE = "55P03";
+
+    /**
+     * Hace la recarga completa desde la API a las tablas a la sombra y las pone en uso.
+     */
+    public static void run() {
+        IngestMetrics metrics = IngestMetrics.begin();
+        IngestPipeline source = new IngestPipeline(new ApiSource(), IngestPipeline.DEFAULT_CAPACITY);
+        Connection conn = null;
+        try {
+            conn = DBUtils.getConnection();
+            conn.setAutoCommit(false);
+
+            // 1. Crear las tablas a la sombra, vacías y sin claves
+            try {
+                metrics.time("preparación", conn, c -> {
+                    createShadowTables(c);
+                    c.commit();
+                });
+            } catch (SQLException ex) {
+                System.out.println("Error al crear las tablas a la sombra: " + ex.getMessage());
+                conn.rollback();
+                return;
+            }
+
+            // 2. Cargar los datos con COPY directamente en las sombras
+            TableLoader loader = CopyLoader.direct(SUFFIX);
+            try {
+                try (Statement st = conn.createStatement()) {
+                    st.executeUpdate("INSERT INTO location" + SUFFIX + " (id, name, type, dimension) VALUES (0, 'unknown', NULL, NULL)");
+                }
+                int total;
+                try (IngestMetrics.Timer t = metrics.time("carga location")) {
+                    total = loader.loadLocations(conn, source::locations);
+                    t.rows(total);
+                }
+                System.out.println("Localizaciones cargadas: " + total);
+                try (IngestMetrics.Timer t = metrics.time("carga episode")) {
+                    total = loader.loadEpisodes(conn, source::episodes);
+                    t.rows(total);
+                }
+                System.out.println("Episodios cargados: " + total);
+                try (IngestMetrics.Timer t = metrics.time("carga character")) {
+                    total = loader.loadCharacters(conn, source::characters);
+                    t.rows(total);
+                }
+                System.out.println("Personajes cargados: " + total);
+            } catch (IOException | InterruptedException ex) {
+                System.out.println("Error al obtener los datos de la API: " + ex.getMessage());
+                conn.rollback();
+                dropShadowTables(conn);
+                return;
+            } catch (SQLException ex) {
+                System.out.println("Error al cargar las tablas a la sombra: " + ex.getMessage());
+                conn.rollback();
+                dropShadowTables(conn);
+                return;
+            }
+
+            // 3. Claves primarias, claves ajenas y estadísticas, con los datos ya dentro
+            try {
+                metrics.time("índices", conn, c -> {
+                    buildConstraints(c);
+                    c.commit();
+                });
+                System.out.println("Claves e índices de las tablas a la sombra creados");
+            } catch (SQLException ex) {
+                System.out.println("Error al crear las claves de las tablas a la sombra: " + ex.getMessage());
+                conn.rollback();
+                dropShadowTables(conn);
+                return;
+            }
+
+            // 4. Intercambiar las tablas en una transacción corta
+            try {
+                metrics.time("intercambio", conn, BlueGreenLoad::swap);
+            } catch (SQLException ex) {
+                System.out.println("Error al intercambiar las tablas: " + ex.getMessage());
+                System.out.println("Las tablas en uso no se han modificado.");
+                dropShadowTables(conn);
+                return;
+            }
+            System.out.println("Base de datos rellenada correctamente.");
+
+        } catch (SQLException ex) {
+            System.out.println("Error con la base de datos: " + ex.getMessage());
+        } finally {
+            source.close();
+            metrics.finish();
+            ApiClient.getCache().printReport();
+            metrics.printReport();
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException ex) {
+                    System.out.println("Error al cerrar la conexión: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Crea &lt;tabla&gt;_new con las columnas y valores por defecto de cada tabla, borrando antes
+     * las que hubiera dejado una recarga anterior interrumpida.
+     */
+    static void createShadowTables(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS character_in_episode_new, character_new, episode_new, location_new");
+            for (String table : TABLES) {
+                st.execute("CREATE TABLE " + table + SUFFIX + " (LIKE " + table + " INCLUDING DEFAULTS)");
+            }
+        }
+    }
+
+    static void dropShadowTables(Connection conn) {
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS character_in_episode_new, character_new, episode_new, location_new");
+            conn.commit();
+        } catch (SQLException ex) {
+            System.out.println("Error al borrar las tablas a la sombra: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Añade las claves a las sombras con nombres provisionales (&lt;tabla&gt;_new_pkey, ...), porque los definitivos
+     * los tienen aún las tablas en uso, y actualiza las estadísticas para el planificador.
+     */
+    private static void buildConstraints(Connection conn) throws SQLException {
+        for (String table : TABLES) {
+            addPrimaryKey(conn, table);
+        }
+        addForeignKeys(conn);
+    }
+
+    /**
+     * Crea la clave primaria (y su índice) de la sombra de la tabla y actualiza sus estadísticas.
+     * Cada tabla es independiente, así que se puede hacer a la vez para varias desde conexiones distintas.
+     */
+    static void addPrimaryKey(Connection conn, String table) throws SQLException {
+        String columns = table.equals("character_in_episode") ? "id_character, id_episode" : "id";
+        try (Statement st = conn.createStatement()) {
+            st.execute("ALTER TABLE " + table + SUFFIX + " ADD CONSTRAINT " + table + SUFFIX + "_pkey PRIMARY KEY (" + columns + ")");
+            st.execute("ANALYZE " + table + SUFFIX);
+        }
+    }
+
+    /**
+     * Crea las claves ajenas entre las sombras; necesita las claves primarias ya creadas.
+     */
+    static void addForeignKeys(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("ALTER TABLE character_new "
+                    + "ADD CONSTRAINT character_new_id_origin_fkey FOREIGN KEY (id_origin) REFERENCES location_new(id), "
+                    + "ADD CONSTRAINT character_new_id_location_fkey FOREIGN KEY (id_location) REFERENCES location_new(id)");
+            st.execute("ALTER TABLE character_in_episode_new "
+                    + "ADD CONSTRAINT character_in_episode_new_id_character_fkey FOREIGN KEY (id_character) REFERENCES character_new(id), "
+                    + "ADD CONSTRAINT character_in_episode_new_id_episode_fkey FOREIGN KEY (id_episode) REFERENCES episode_new(id)");
+        }
+    }
+
+    /**
+     * Pone las sombras en uso: renombra las tablas actuales a &lt;tabla&gt;_old y las sombras a su nombre,
+     * borra las antiguas y devuelve a claves e índices sus nombres de siempre.
+     * Todo en una transacción, así que el cambio es atómico. Si no consigue los bloqueos a tiempo lo reintenta.
+     */
+    static void swap(Connection conn) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            try (Statement st = conn.createStatement()) {
+                st.execute("SET LOCAL lock_timeout = '" + LOCK_TIMEOUT + "'");
+                st.execute("LOCK TABLE location, episode, character, character_in_episode IN ACCESS EXCLUSIVE MODE");
+                for (String table : TABLES) {
+                    st.execute("ALTER TABLE " + table + " RENAME TO " + table + "_old");
+                    st.execute("ALTER TABLE " + table + SUFFIX + " RENAME TO " + table);
+                }
+                st.execute("DROP TABLE character_in_episode_old, character_old, episode_old, location_old");
+                renameConstraint(st, "location", "location_pkey");
+                renameConstraint(st, "episode", "episode_pkey");
+                renameConstraint(st, "character", "character_pkey");
+                renameConstraint(st, "character", "character_id_origin_fkey");
+                renameConstraint(st, "character", "character_id_location_fkey");
+                renameConstraint(st, "character_in_episode", "character_in_episode_pkey");
+                renameConstraint(st, "character_in_episode", "character_in_episode_id_character_fkey");
+                renameConstraint(st, "character_in_episode", "character_in_episode_id_episode_fkey");
+                conn.commit();
+                return;
+            } catch (SQLException ex) {
+                conn.rollback();
+                if (!LOCK_NOT_AVAILABLE.equals(ex.getSQLState()) || attempt >= SWAP_ATTEMPTS) {
+                    throw ex;
+                }
+                System.out.println("Las tablas están ocupadas; reintentando el intercambio (" + attempt + "/" + SWAP_ATTEMPTS + ")...");
+            }
+        }
+    }
+
+    /**
+     * Cambia el nombre provisional de una clave de la sombra (el definitivo con "_new" tras el nombre de la tabla).
+     * En las claves primarias se renombra también su índice.
+     */
+    private static void renameConstraint(Statement st, String table, String name) throws SQLException {
+        String provisional = table + SUFFIX + name.substring(table.length());
+        st.execute("ALTER TABLE " + table + " RENAME CONSTRAINT " + provisional + " TO " + name);
+    }
+}
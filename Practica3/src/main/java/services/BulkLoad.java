@@ -0,0 +1,176 @@
+package services;
+
+import utils.ApiClient;
+import utils.DBUtils;
+import utils.IngestMetrics;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Recarga masiva para conjuntos de datos muy grandes, con el mantenimiento de claves e índices aplazado.
+ * Con las claves puestas, cada fila de character y character_in_episode comprueba sus claves ajenas
+ * y actualiza los índices una a una, y eso domina el tiempo de carga. Aquí:
+ * 1. Se descargan todos los datos a memoria ({@link StagingBuffer}).
+ * 2. Se comprueba en memoria la integridad referencial ({@link IntegrityCheck}); si falla, se aborta
+ *    sin tocar la BD y se muestran las filas erróneas.
+ * 3. En una transacción: se quitan claves ajenas y primarias, se vacían las tablas con TRUNCATE,
+ *    se copian los datos con COPY directamente en las tablas y se vuelven a crear las claves
+ *    (un índice construido de una vez y una comprobación por clave ajena), y se actualizan las estadísticas.
+ * Como todo va en una transacción, si algo falla las tablas quedan como estaban, con sus claves.
+ * Mientras dura la transacción las tablas están bloqueadas también para lectura;
+ * para recargar sin bloquear a los lectores está {@link BlueGreenLoad}.
+ */
+public class BulkLoad {
+
+    /**
+     * Descarga los datos de la API y los carga en modo masivo.
+     */
+    public static void run() {
+        run(new ApiSource());
+    }
+
+    /**
+     * Carga en modo masivo los datos del origen indicado (por ejemplo una instantánea local).
+     * @param origin Origen de los datos
+     */
+    public static void run(IngestSource origin) {
+        IngestMetrics metrics = IngestMetrics.begin();
+        try {
+            StagingBuffer staged = new StagingBuffer();
+            try {
+                System.out.println("Descargando datos...");
+                try (IngestMetrics.Timer t = metrics.time("descarga")) {
+                    origin.locations(staged.getLocations()::add);
+                    origin.episodes(staged.getEpisodes()::add);
+                    origin.characters(staged.getCharacters()::add);
+                    t.rows(staged.size());
+                }
+            } catch (IOException | InterruptedException | SQLException ex) {
+                System.out.println("Error al obtener los datos: " + ex.getMessage());
+                return;
+            } finally {
+                ApiClient.getCache().printReport();
+            }
+            staged.printFootprint();
+
+            IntegrityCheck.Report report;
+            try (IngestMetrics.Timer t = metrics.time("validación")) {
+                report = IntegrityCheck.validate(staged, true);
+                t.rows(staged.size());
+            }
+            report.print();
+            if (!report.isValid()) {
+                System.out.println("Carga abortada: la base de datos no se ha modificado.");
+                return;
+            }
+
+            load(staged, metrics);
+        } finally {
+            metrics.finish();
+            metrics.printReport();
+        }
+    }
+
+    /**
+     * Sustituye el contenido de las tablas por los datos ya validados, con las claves quitadas durante la copia.
+     */
+    private static void load(StagingBuffer staged, IngestMetrics metrics) {
+        Connection conn = null;
+        try {
+            conn = DBUtils.getConnection();
+            conn.setAutoCommit(false);
+
+            try {
+                metrics.time("quitar claves", conn, BulkLoad::dropConstraints);
+                metrics.time("vaciado", conn, BulkLoad::truncateTables);
+
+                TableLoader loader = CopyLoader.direct("");
+                int total;
+                try (IngestMetrics.Timer t = metrics.time("carga location")) {
+                    total = loader.loadLocations(conn, staged::locations);
+                    t.rows(total);
+                }
+                System.out.println("Localizaciones añadidas: " + total);
+                try (IngestMetrics.Timer t = metrics.time("carga episode")) {
+                    total = loader.loadEpisodes(conn, staged::episodes);
+                    t.rows(total);
+                }
+                System.out.println("Episodios añadidos: " + total);
+                try (IngestMetrics.Timer t = metrics.time("carga character")) {
+                    total = loader.loadCharacters(conn, staged::characters);
+                    t.rows(total);
+                }
+                System.out.println("Personajes añadidos: " + total);
+
+                metrics.time("crear claves", conn, BulkLoad::addConstraints);
+                System.out.println("Claves e índices reconstruidos");
+                metrics.time("commit", conn, Connection::commit);
+                System.out.println("Base de datos rellenada correctamente.");
+            } catch (IOException | InterruptedException ex) {
+                // El origen es la memoria, así que esto solo pasa si se interrumpe el hilo
+                System.out.println("Error al leer los datos en memoria: " + ex.getMessage());
+                conn.rollback();
+            } catch (SQLException ex) {
+                System.out.println("Error en la carga masiva: " + ex.getMessage());
+                conn.rollback();
+            }
+        } catch (SQLException ex) {
+            System.out.println("Error con la base de datos: " + ex.getMessage());
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException ex) {
+                    System.out.println("Error al cerrar la conexión: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Vacía las cuatro tablas con TRUNCATE y vuelve a crear la localización "unknown" (id 0).
+     */
+    private static void truncateTables(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("TRUNCATE character_in_episode, character, episode, location");
+            st.executeUpdate("INSERT INTO location (id, name, type, dimension) VALUES (0, 'unknown', NULL, NULL)");
+        }
+    }
+
+    /**
+     * Quita las claves ajenas y después las primarias (con sus índices), de las tablas más dependientes a las menos.
+     */
+    private static void dropConstraints(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("ALTER TABLE character_in_episode DROP CONSTRAINT IF EXISTS character_in_episode_id_character_fkey, "
+                    + "DROP CONSTRAINT IF EXISTS character_in_episode_id_episode_fkey, "
+                    + "DROP CONSTRAINT IF EXISTS character_in_episode_pkey");
+            st.execute("ALTER TABLE character DROP CONSTRAINT IF EXISTS character_id_origin_fkey, "
+                    + "DROP CONSTRAINT IF EXISTS character_id_location_fkey, "
+                    + "DROP CONSTRAINT IF EXISTS character_pkey");
+            st.execute("ALTER TABLE episode DROP CONSTRAINT IF EXISTS episode_pkey");
+            st.execute("ALTER TABLE location DROP CONSTRAINT IF EXISTS location_pkey");
+        }
+    }
+
+    /**
+     * Vuelve a crear las claves primarias y ajenas con sus nombres de siempre y actualiza las estadísticas.
+     */
+    private static void addConstraints(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("ALTER TABLE location ADD CONSTRAINT location_pkey PRIMARY KEY (id)");
+            st.execute("ALTER TABLE episode ADD CONSTRAINT episode_pkey PRIMARY KEY (id)");
+            st.execute("ALTER TABLE character ADD CONSTRAINT character_pkey PRIMARY KEY (id), "
+                    + "ADD CONSTRAINT character_id_origin_fkey FOREIGN KEY (id_origin) REFERENCES location(id), "
+                    + "ADD CONSTRAINT character_id_location_fkey FOREIGN KEY (id_location) REFERENCES location(id)");
+            st.execute("ALTER TABLE character_in_episode ADD CONSTRAINT character_in_episode_pkey PRIMARY KEY (id_character, id_episode), "
+                    + "ADD CONSTRAINT character_in_episode_id_character_fkey FOREIGN KEY (id_character) REFERENCES character(id), "
+                    + "ADD CONSTRAINT character_in_episode_id_episode_fkey FOREIGN KEY (id_episode) REFERENCES episode(id)");
+            st.execute("ANALYZE location, episode, character, character_in_episode");
+        }
+    }
+}
@@ -2,18 +2,24 @@ package services;
 
 import utils.HibernateUtils;
 import utils.IntValidator;
+import utils.KeysetPager;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
+import org.hibernate.StatelessSession;
 import org.hibernate.Transaction;
 
 import models.Character;
+import models.CharacterSummary;
 import models.Episode;
 import models.Location;
+import models.LocationSummary;
 
+import org.hibernate.jpa.SpecHints;
 import org.hibernate.query.Query;
 
 /**
@@ -51,49 +57,66 @@ public class CharacterService {
         System.out.print("Introduce el texto a buscar en el nombre del personaje: ");
         String searchText = scanner.nextLine().trim();
 
-        try (Session session = HibernateUtils.getSession()) {
-            Query<Character> query = session.createQuery(
-                "FROM Character c WHERE LOWER(c.name) LIKE LOWER(:name) ORDER BY id", Character.class);
-            query.setParameter("name", "%" + searchText + "%"); // Búsqueda parcial
-            
-            List<Character> results = query.list();
+        try {
+            List<CharacterSummary> results = obtenerPersonajesPorNombre(searchText);
             
             if (results.isEmpty()) {
                 System.out.println("No se encontraron personajes con el nombre que contiene: " + searchText);
             } else {
                 System.out.println("\nResultados de la búsqueda:");
-                for (Character character : results) {
-                    System.out.println("ID: " + character.getId() + " | Nombre: " + character.getName() + " | Estatus: " + character.getStatus() + " | Especie: " + character.getSpecies() + " | Tipo: " + character.getType() + " | Gender: " + character.getGender());
-                }
+                results.forEach(CharacterService::mostrarResumen);
             }
         } catch (HibernateException e) {
             System.out.println("Error al buscar personajes: " + e.getMessage());
         }
 	}
+
+	/**
+     * Devuelve los personajes cuyo nombre contiene el texto (no sensible a mayúsculas), ordenados por ID.
+     * 
+     * @param texto Texto a buscar.
+     * @return Datos de los personajes encontrados.
+     */
+	public static List<CharacterSummary> obtenerPersonajesPorNombre(String texto) {
+	    try (StatelessSession session = HibernateUtils.getStatelessSession()) {
+	        Query<CharacterSummary> query = session.createNamedQuery("Character.buscarPorNombre", CharacterSummary.class);
+	        query.setParameter("name", "%" + texto + "%"); // Búsqueda parcial
+	        return query.list();
+	    }
+	}
 	
 	/**
      * Busca personajes que no estén asociados a ningún episodio.
      * Utiliza HQL para realizar una subconsulta y mostrar los personajes sin episodios.
      */
 	public static void buscarPersonajesSinEpisodiosHQL() {
-	    try (Session session = HibernateUtils.getSession()) {
-	        String hql = "SELECT c FROM Character c WHERE c.id NOT IN " +
-	                     "(SELECT ce.id FROM Character ce JOIN ce.episodes e) ORDER BY id";
-
-	        List<Character> results = session.createQuery(hql, Character.class).list();
+	    try {
+	        List<CharacterSummary> results = obtenerPersonajesSinEpisodios();
 
 	        if (results.isEmpty()) {
 	            System.out.println("\nNo hay personajes sin episodios.");
 	        } else {
 	            System.out.println("\nPersonajes sin episodios:");
-	            for (Character character : results) {
-	                System.out.println("ID: " + character.getId() + " | Nombre: " + character.getName() + " | Estatus: " + character.getStatus() + " | Especie: " + character.getSpecies() + " | Tipo: " + character.getType() + " | Gender: " + character.getGender());
-	            }
+	            results.forEach(CharacterService::mostrarResumen);
 	        }
 	    } catch (HibernateException e) {
 	        System.out.println("Error al buscar personajes sin episodios: " + e.getMessage());
 	    }
 	}
+
+	/**
+     * Devuelve los personajes que no están asociados a ningún episodio, ordenados por ID.
+     * 
+     * @return Datos de los personajes sin episodios.
+     */
+	public static List<CharacterSummary> obtenerPersonajesSinEpisodios() {
+	    try (StatelessSession session = HibernateUtils.getStatelessSession()) {
+	        String hql = "SELECT new models.CharacterSummary(c.id, c.name, c.status, c.species, c.type, c.gender) " +
+	                     "FROM Character c WHERE c.id NOT IN " +
+	                     "(SELECT ce.id FROM Character ce JOIN ce.episodes e) ORDER BY c.id";
+	        return session.createQuery(hql, CharacterSummary.class).list();
+	    }
+	}
 	
 	/**
      * Inserta un nuevo personaje en la base de datos utilizando Hibernate.
@@ -113,7 +136,7 @@ public class CharacterService {
 	        String gender = seleccionarGeneroDesdeBD();
 
 	        // Mostrar localizaciones disponibles y obtener el id suyo
-	        List<Location> locations = obtenerLocalizacionesDesdeBD(session);
+	        List<LocationSummary> locations = obtenerLocalizacionesDesdeBD(session);
 
 	        if (locations.isEmpty()) {
 	            System.out.println("No hay localizaciones disponibles. No se puede continuar.");
@@ -143,6 +166,7 @@ public class CharacterService {
 
 	        session.persist(character);
 	        session.getTransaction().commit();
+	        AttributeDictionary.add(character);
 	        System.out.println("Personaje insertado con éxito.");
 	        
 	        mostrarPersonaje(character);
@@ -152,6 +176,15 @@ public class CharacterService {
 	    }
 	}
 	
+	/**
+     * Muestra en una línea los datos de un personaje de un listado o una búsqueda.
+     * 
+     * @param c Datos del personaje.
+     */
+	private static void mostrarResumen(CharacterSummary c) {
+	    System.out.println("ID: " + c.id() + " | Nombre: " + c.name() + " | Estatus: " + c.status() + " | Especie: " + c.species() + " | Tipo: " + c.type() + " | Gender: " + c.gender());
+	}
+	
 	/**
      * Muestra por consola todos los atributos del personaje recibido.
      * 
@@ -188,43 +221,35 @@ public class CharacterService {
 	
 	
 	public static String seleccionarStatusDesdeBD() {
-        try (Session session = HibernateUtils.getSession()) {
-            return seleccionarValorDesdeBD(session, "status", "Estatus");
-        }
+        return seleccionarValorDesdeBD("status", "Estatus");
     }
 	
 
     public static String seleccionarEspeciesDesdeBD() {
-        try (Session session = HibernateUtils.getSession()) {
-            return seleccionarValorDesdeBD(session, "species", "Especies");
-        }
+        return seleccionarValorDesdeBD("species", "Especies");
     }
     
 
     public static String seleccionarTipoDesdeBD() {
-        try (Session session = HibernateUtils.getSession()) {
-            return seleccionarValorDesdeBD(session, "type", "Tipos");
-        }
+        return seleccionarValorDesdeBD("type", "Tipos");
     }
 
     
     public static String seleccionarGeneroDesdeBD() {
-        try (Session session = HibernateUtils.getSession()) {
-            return seleccionarValorDesdeBD(session, "gender", "Géneros");
-        }
+        return seleccionarValorDesdeBD("gender", "Géneros");
     }
     
 	
     /**
      * Solicita al usuario la selección de un valor para un campo de tipo (como status, species...).
+     * Los valores salen del diccionario en memoria, que solo consulta la BD la primera vez.
      * 
-     * @param session Sesión Hibernate abierta.
      * @param campo Nombre del campo en la entidad Character (ej. "status").
      * @param descripcionCampo Descripción para mostrar al usuario.
      * @return Valor seleccionado por el usuario.
      */
-	private static String seleccionarValorDesdeBD(Session session, String campo, String descripcionCampo) {
-        List<String> valores = obtenerValoresUnicos(session, campo);
+	private static String seleccionarValorDesdeBD(String campo, String descripcionCampo) {
+        List<String> valores = AttributeDictionary.values(campo);
 
         if (valores.isEmpty()) {
             System.out.println("No existen valores registrados para " + descripcionCampo + ".");
@@ -235,7 +260,7 @@ public class CharacterService {
         do {
             System.out.println(descripcionCampo + " disponibles en la BD:");
             for (int i = 0; i < valores.size(); i++) {
-                System.out.println((i + 1) + ". " + valores.get(i));
+                System.out.println((i + 1) + ". " + valores.get(i) + " (" + AttributeDictionary.count(campo, valores.get(i)) + ")");
             }
             System.out.print("Selecciona una opción (1-" + valores.size() + "): ");
             String input = scanner.nextLine().trim();
@@ -253,26 +278,15 @@ public class CharacterService {
         return valores.get(opcion - 1);
     }
 	
-	/**
-     * Devuelve una lista de valores únicos existentes en la base de datos para un campo de tipo.
-     * 
-     * @param session Sesión Hibernate abierta.
-     * @param campo Campo de la entidad Character a consultar.
-     * @return Lista de valores únicos encontrados.
-     */
-	private static List<String> obtenerValoresUnicos(Session session, String campo) {
-        String hql = "SELECT DISTINCT c." + campo + " FROM Character c WHERE c." + campo + " IS NOT NULL AND c." + campo + " <> '' ORDER BY c." + campo;
-        return session.createQuery(hql, String.class).list();
-    }
-	
 	/**
      * Devuelve una lista con todas las localizaciones disponibles en la base de datos.
      * 
      * @param session Sesión Hibernate abierta.
-     * @return Lista de objetos Location.
+     * @return Datos de las localizaciones, ordenadas por ID.
      */
-	private static List<Location> obtenerLocalizacionesDesdeBD(Session session) {
-	    return session.createQuery("FROM Location", Location.class).list();
+	private static List<LocationSummary> obtenerLocalizacionesDesdeBD(Session session) {
+	    return session.createQuery("SELECT new models.LocationSummary(l.id, l.name, l.type, l.dimension) FROM Location l ORDER BY l.id",
+	            LocationSummary.class).setCacheable(true).list();
 	}
 	
 	/**
@@ -282,10 +296,10 @@ public class CharacterService {
      * @param tipo Tipo de localización (origen o ubicación actual).
      * @return ID de la localización seleccionada por el usuario.
      */
-	private static int seleccionarLocationDeLista(List<Location> locations, String tipo) {
+	private static int seleccionarLocationDeLista(List<LocationSummary> locations, String tipo) {
 	    System.out.println("\nLocalizaciones disponibles para " + tipo + ":");
-	    for (Location loc : locations) {
-	        System.out.println("ID: " + loc.getId() + " - Nombre: " + loc.getName());
+	    for (LocationSummary loc : locations) {
+	        System.out.println("ID: " + loc.id() + " - Nombre: " + loc.name());
 	    }
 
 	    int id;
@@ -294,7 +308,7 @@ public class CharacterService {
 	        System.out.print("Introduce el ID de la localización de " + tipo + ": ");
 	        id = IntValidator.validarEntero(scanner);
 	        int idABuscar = id;
-	        valido = locations.stream().anyMatch(loc -> loc.getId() == idABuscar);
+	        valido = locations.stream().anyMatch(loc -> loc.id() == idABuscar);
 	        if (!valido) {
 	            System.out.println("ID inválido. Intenta nuevamente.");
 	        }
@@ -316,13 +330,15 @@ public class CharacterService {
 	        System.out.print("Introduce el ID del personaje a modificar: ");
 	        int id = IntValidator.validarEntero(scanner);
 
-	        Character personaje = session.get(Character.class, id);
+	        Character personaje = buscarConPlan(session, id, "Character.localizaciones");
 
 	        if (personaje == null) {
 	            System.out.println("No se encontró el personaje con ID " + id);
 	            return;
 	        }
 
+	        AttributeDictionary.Attributes antes = AttributeDictionary.Attributes.of(personaje);
+
 	        System.out.println("\nModificando personaje actual:");
 	        mostrarPersonaje(personaje);
 
@@ -332,31 +348,31 @@ public class CharacterService {
 
 	        System.out.print("¿Deseas cambiar el estado? ('si' para cambiarlo, sino pasa al siguiente atributo): ");
 	        if (scanner.nextLine().trim().equalsIgnoreCase("si")) {
-	            String status = seleccionarValorDesdeBD(session, "status", "Estatus");
+	            String status = seleccionarValorDesdeBD("status", "Estatus");
 	            personaje.setStatus(status);
 	        }
 
 	        System.out.print("¿Deseas cambiar la especie? ('si' para cambiarlo, sino pasa al siguiente atributo): ");
 	        if (scanner.nextLine().trim().equalsIgnoreCase("si")) {
-	            String species = seleccionarValorDesdeBD(session, "species", "Especies");
+	            String species = seleccionarValorDesdeBD("species", "Especies");
 	            personaje.setSpecies(species);
 	        }
 
 	        System.out.print("¿Deseas cambiar el tipo? ('si' para cambiarlo, sino pasa al siguiente atributo): ");
 	        if (scanner.nextLine().trim().equalsIgnoreCase("si")) {
-	            String type = seleccionarValorDesdeBD(session, "type", "Tipos");
+	            String type = seleccionarValorDesdeBD("type", "Tipos");
 	            personaje.setType(type);
 	        }
 
 	        System.out.print("¿Deseas cambiar el género? ('si' para cambiarlo, sino pasa al siguiente atributo): ");
 	        if (scanner.nextLine().trim().equalsIgnoreCase("si")) {
-	            String gender = seleccionarValorDesdeBD(session, "gender", "Géneros");
+	            String gender = seleccionarValorDesdeBD("gender", "Géneros");
 	            personaje.setGender(gender);
 	        }
 
 	        System.out.print("¿Deseas cambiar la localización de origen? ('si' para cambiarlo, sino pasa al siguiente atributo): ");
 	        if (scanner.nextLine().trim().equalsIgnoreCase("si")) {
-	            List<Location> locations = obtenerLocalizacionesDesdeBD(session);
+	            List<LocationSummary> locations = obtenerLocalizacionesDesdeBD(session);
 	            int idOrigin = seleccionarLocationDeLista(locations, "origen");
 	            Location origin = session.get(Location.class, idOrigin);
 	            personaje.setOrigin(origin);
@@ -364,7 +380,7 @@ public class CharacterService {
 
 	        System.out.print("¿Deseas cambiar la localización actual? ('si' para cambiarlo, sino pasa a la siguiente opción): ");
 	        if (scanner.nextLine().trim().equalsIgnoreCase("si")) {
-	            List<Location> locations = obtenerLocalizacionesDesdeBD(session);
+	            List<LocationSummary> locations = obtenerLocalizacionesDesdeBD(session);
 	            int idLocation = seleccionarLocationDeLista(locations, "ubicación actual");
 	            Location location = session.get(Location.class, idLocation);
 	            personaje.setLocation(location);
@@ -385,6 +401,7 @@ public class CharacterService {
 	        tx = session.beginTransaction();
 	        session.merge(personaje);
 	        tx.commit();
+	        AttributeDictionary.update(antes, personaje);
 
 	        System.out.println("Personaje modificado con éxito.");
 	        mostrarPersonaje(personaje);
@@ -409,7 +426,7 @@ public class CharacterService {
 	    int id = IntValidator.validarEntero(scanner);
 
 	    try (Session session = HibernateUtils.getSession()) {
-	        Character personaje = session.get(Character.class, id);
+	        Character personaje = buscarConPlan(session, id, "Character.localizacionesYEpisodios");
 
 	        if (personaje == null) {
 	            System.out.println("No se encontró el personaje con ID " + id);
@@ -443,6 +460,7 @@ public class CharacterService {
 	        session.remove(personaje);
 
 	        tx.commit();
+	        AttributeDictionary.remove(personaje);
 	        System.out.println("Personaje eliminado con éxito.");
 	    } catch (HibernateException e) {
 	    	 if (tx != null) {
@@ -452,20 +470,50 @@ public class CharacterService {
 	    }
 	}
 	
+	/**
+     * Muestra los personajes página a página (ver {@link KeysetPager}).
+     */
 	public static void listarTodosLosPersonajes() {
-		Session session = HibernateUtils.getSession();
-				
-	    List<Character> personajes = session.createQuery("FROM Character ORDER BY id", Character.class).list();
+		try {
+		    boolean hayPersonajes = KeysetPager.browse(scanner, "Listado de personajes",
+		            CharacterService::obtenerPaginaDePersonajes, CharacterSummary::id, CharacterService::mostrarResumen);
+
+		    if (!hayPersonajes) {
+		        System.out.println("No hay personajes en la base de datos.");
+		    }
+		} catch (HibernateException e) {
+		    System.out.println("Error al listar personajes: " + e.getMessage());
+		}
+	}
 
-	    if (personajes.isEmpty()) {
-	        System.out.println("No hay personajes en la base de datos.");
-	        return;
+	/**
+     * Devuelve una página de personajes ordenados por ID, empezando después del ID indicado
+     * (paginación por clave: la consulta salta directamente a esa posición del índice).
+     * 
+     * @param despuesDeId Solo se devuelven personajes con ID mayor que este.
+     * @param tamaño Número máximo de personajes de la página.
+     * @return Personajes de la página.
+     */
+	public static List<CharacterSummary> obtenerPaginaDePersonajes(int despuesDeId, int tamaño) {
+	    try (StatelessSession session = HibernateUtils.getStatelessSession()) {
+	        return session.createNamedQuery("Character.pagina", CharacterSummary.class)
+	                .setParameter("despues", despuesDeId)
+	                .setMaxResults(tamaño)
+	                .list();
 	    }
+	}
 
-	    System.out.println("Listado de personajes:");
-	    for (Character p : personajes) {
-	        System.out.println("ID: " + p.getId() + " | Nombre: " + p.getName() + " | Estatus: " + p.getStatus() + " | Especie: " + p.getSpecies() + " | Tipo: " + p.getType() + " | Gender: " + p.getGender());
-	    }
+	/**
+     * Carga un personaje con el plan de carga (entity graph) indicado, de modo que lo que se va a mostrar
+     * llega en la misma consulta en lugar de en una consulta más por cada relación perezosa.
+     * 
+     * @param session Sesión Hibernate abierta.
+     * @param id ID del personaje.
+     * @param plan Nombre del entity graph definido en Character.
+     * @return El personaje, o null si no existe.
+     */
+	static Character buscarConPlan(Session session, int id, String plan) {
+	    return session.find(Character.class, id, Map.of(SpecHints.HINT_SPEC_FETCH_GRAPH, session.getEntityGraph(plan)));
 	}
 
 	
@@ -0,0 +1,245 @@
+package services;
+
+import models.CharacterData;
+import models.EpisodeData;
+import models.LocationData;
+import utils.CopyWriter;
+import utils.IngestMetrics;
+import utils.RecordSource;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * Carga masiva de las tablas con el protocolo COPY de PostgreSQL (CopyManager de pgjdbc).
+ * Los registros se envían en formato texto según llegan del origen a una tabla temporal
+ * con la misma estructura, y desde ella se pasan a la tabla real con
+ * INSERT ... SELECT ... ON CONFLICT DO NOTHING, de modo que las filas que ya existían se respetan
+ * igual que con los procedimientos add_*. Informa del rendimiento (filas/s) de cada tabla.
+ * Con {@link #direct(String)} se copia directamente a &lt;tabla&gt;&lt;sufijo&gt;, sin tabla temporal ni merge,
+ * para cargar tablas vacías y sin claves (ver {@link BlueGreenLoad} y {@link BulkLoad}).
+ */
+public class CopyLoader implements TableLoader {
+
+    // Columnas de cada COPY, en el orden en que las escriben los métodos write*
+    static final String LOCATION_COLUMNS = "id, name, type, dimension";
+    static final String EPISODE_COLUMNS = "id, name, air_date, episode";
+    static final String CHARACTER_COLUMNS = "id, name, status, species, type, gender, id_origin, id_location";
+    static final String LINK_COLUMNS = "id_character, id_episode";
+
+    // Sufijo de las tablas destino en modo directo; null para el modo normal (tabla temporal y merge)
+    private final String directSuffix;
+
+    public CopyLoader() {
+        this(null);
+    }
+
+    private CopyLoader(String directSuffix) {
+        this.directSuffix = directSuffix;
+    }
+
+    /**
+     * Loader que copia directamente a las tablas &lt;tabla&gt;&lt;sufijo&gt; (por ejemplo location_new, o la propia
+     * tabla con el sufijo vacío).
+     * Las tablas deben existir y estar vacías, así que todas las filas copiadas cuentan como insertadas.
+     * @param suffix Sufijo de las tablas destino
+     * @return Loader en modo directo
+     */
+    public static CopyLoader direct(String suffix) {
+        return new CopyLoader(suffix);
+    }
+
+    @Override
+    public int loadLocations(Connection conn, RecordSource<LocationData> source) throws SQLException, IOException, InterruptedException {
+        long start = System.nanoTime();
+        CopyWriter copy = open(conn, "location", LOCATION_COLUMNS);
+        try {
+            source.forEach(loc -> writeLocation(copy, loc.getId(), loc.getName(), loc.getType(), loc.getDimension()));
+        } catch (Exception ex) {
+            copy.cancel();
+            throw ex;
+        }
+        return complete(conn, "location", LOCATION_COLUMNS, "ON CONFLICT (id) DO NOTHING", copy, start);
+    }
+
+    @Override
+    public int loadEpisodes(Connection conn, RecordSource<EpisodeData> source) throws SQLException, IOException, InterruptedException {
+        long start = System.nanoTime();
+        CopyWriter copy = open(conn, "episode", EPISODE_COLUMNS);
+        try {
+            source.forEach(ep -> writeEpisode(copy, ep.getId(), ep.getName(), ep.getAir_date(), ep.getEpisode()));
+        } catch (Exception ex) {
+            copy.cancel();
+            throw ex;
+        }
+        return complete(conn, "episode", EPISODE_COLUMNS, "ON CONFLICT (id) DO NOTHING", copy, start);
+    }
+
+    /**
+     * Carga los personajes y después sus relaciones con episodios.
+     * Una conexión solo puede tener un COPY abierto, así que los pares (personaje, episodio)
+     * se acumulan en un array de int mientras llegan los personajes y se copian al terminar.
+     */
+    @Override
+    public int loadCharacters(Connection conn, RecordSource<CharacterData> source) throws SQLException, IOException, InterruptedException {
+        long start = System.nanoTime();
+        IntPairs pairs = new IntPairs();
+        CopyWriter copy = open(conn, "character", CHARACTER_COLUMNS);
+        try {
+            source.forEach(ch -> {
+                writeCharacter(copy, ch.getId(), ch.getName(), ch.getStatus(), ch.getSpecies(), ch.getType(), ch.getGender(),
+                        ch.getId_origin(), ch.getId_location());
+                for (int epId : ch.getEpisodeIds()) {
+                    pairs.add(ch.getId(), epId);
+                }
+            });
+        } catch (Exception ex) {
+            copy.cancel();
+            throw ex;
+        }
+        int inserted = complete(conn, "character", CHARACTER_COLUMNS, "ON CONFLICT (id) DO NOTHING", copy, start);
+
+        start = System.nanoTime();
+        CopyWriter relCopy = open(conn, "character_in_episode", LINK_COLUMNS);
+        try {
+            for (int i = 0; i < pairs.size(); i++) {
+                writeLink(relCopy, pairs.first(i), pairs.second(i));
+            }
+        } catch (SQLException ex) {
+            relCopy.cancel();
+            throw ex;
+        }
+        complete(conn, "character_in_episode", LINK_COLUMNS, "ON CONFLICT DO NOTHING", relCopy, start);
+        return inserted;
+    }
+
+    /**
+     * Escribe una fila de location en el COPY ({@link #LOCATION_COLUMNS}).
+     * Los write* los comparten todas las cargas con COPY, vengan los datos de objetos o de {@link StagingBuffer}.
+     */
+    static void writeLocation(CopyWriter copy, int id, String name, String type, String dimension) throws SQLException {
+        copy.writeInt(id).writeText(name).writeText(type).writeText(dimension);
+        copy.endRow();
+    }
+
+    /**
+     * Escribe una fila de episode en el COPY ({@link #EPISODE_COLUMNS}).
+     */
+    static void writeEpisode(CopyWriter copy, int id, String name, Date airDate, String episode) throws SQLException {
+        copy.writeInt(id).writeText(name).writeDate(airDate).writeText(episode);
+        copy.endRow();
+    }
+
+    /**
+     * Escribe una fila de character en el COPY ({@link #CHARACTER_COLUMNS}).
+     */
+    static void writeCharacter(CopyWriter copy, int id, String name, String status, String species, String type, String gender,
+                               int idOrigin, int idLocation) throws SQLException {
+        copy.writeInt(id).writeText(name).writeText(status).writeText(species)
+            .writeText(type).writeText(gender).writeInt(idOrigin).writeInt(idLocation);
+        copy.endRow();
+    }
+
+    /**
+     * Escribe una fila de character_in_episode en el COPY ({@link #LINK_COLUMNS}).
+     */
+    static void writeLink(CopyWriter copy, int characterId, int episodeId) throws SQLException {
+        copy.writeInt(characterId).writeInt(episodeId);
+        copy.endRow();
+    }
+
+    /**
+     * Abre el COPY hacia la tabla destino: la temporal tmp_&lt;tabla&gt;, que se crea aquí,
+     * o en modo directo &lt;tabla&gt;&lt;sufijo&gt;.
+     */
+    private CopyWriter open(Connection conn, String table, String columns) throws SQLException {
+        if (directSuffix != null) {
+            return CopyWriter.open(conn, "COPY " + table + directSuffix + " (" + columns + ") FROM STDIN");
+        }
+        createStagingTable(conn, table);
+        return CopyWriter.open(conn, "COPY tmp_" + table + " (" + columns + ") FROM STDIN");
+    }
+
+    /**
+     * Cierra el COPY, pasa las filas de la temporal a la tabla real (salvo en modo directo) e informa.
+     * @return Filas insertadas
+     */
+    private int complete(Connection conn, String table, String columns, String onConflict, CopyWriter copy, long start) throws SQLException {
+        long copied = copy.finish();
+        long mergeStart = System.nanoTime();
+        int inserted;
+        if (directSuffix != null) {
+            inserted = (int) copied;
+            table = table + directSuffix;
+        } else {
+            inserted = merge(conn, "INSERT INTO " + table + " (" + columns + ") "
+                    + "SELECT " + columns + " FROM tmp_" + table + " " + onConflict);
+        }
+        long mergeNanos = System.nanoTime() - mergeStart;
+        report(table, copy, copied, inserted, start, mergeNanos);
+        return inserted;
+    }
+
+    /**
+     * Crea una tabla temporal tmp_&lt;tabla&gt; con la estructura de la tabla real, sin claves ni índices,
+     * que se borra sola al terminar la transacción.
+     */
+    private static void createStagingTable(Connection conn, String table) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS tmp_" + table);
+            st.execute("CREATE TEMP TABLE tmp_" + table + " (LIKE " + table + " INCLUDING DEFAULTS) ON COMMIT DROP");
+        }
+    }
+
+    private static int merge(Connection conn, String sql) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            return st.executeUpdate(sql);
+        }
+    }
+
+    /**
+     * Muestra el rendimiento de la tabla y lo registra en la etapa "insert &lt;tabla&gt;" de {@link IngestMetrics}:
+     * solo el tiempo enviando el COPY y haciendo el INSERT ... SELECT, no el de espera al origen.
+     */
+    private static void report(String table, CopyWriter copy, long copied, int inserted, long startNanos, long mergeNanos) {
+        IngestMetrics.Stage stage = IngestMetrics.current().stage("insert " + table);
+        stage.add(copy.getSendNanos() + mergeNanos, copied);
+        stage.addBytes(copy.getBytes());
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        double rate = seconds > 0 ? copied / seconds : copied;
+        System.out.printf("COPY %s: %d filas en %.2f s (%.0f filas/s), %d insertadas%n", table, copied, seconds, rate, inserted);
+    }
+
+    /**
+     * Lista creciente de pares de int guardados de forma contigua en un solo array.
+     */
+    private static final class IntPairs {
+        private int[] data = new int[1024];
+        private int size;
+
+        void add(int first, int second) {
+            if (2 * size + 2 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[2 * size] = first;
+            data[2 * size + 1] = second;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int first(int i) {
+            return data[2 * i];
+        }
+
+        int second(int i) {
+            return data[2 * i + 1];
+        }
+    }
+}
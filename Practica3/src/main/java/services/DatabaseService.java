@@ -1,27 +1,26 @@
 package services;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import utils.DBUtils;
-import models.LocationData;
-import models.EpisodeData;
 import models.CharacterData;
+import models.EpisodeData;
+import models.LocationData;
+import utils.ApiClient;
+import utils.ApiDecoder;
+import utils.BatchInserter;
+import utils.DBUtils;
+import utils.IngestMetrics;
 
 import java.io.IOException;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.sql.CallableStatement;
 import java.sql.Connection;
-import java.sql.Date;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.ToIntFunction;
 
 
 
@@ -30,16 +29,100 @@ import java.util.Locale;
  */
 public class DatabaseService {
 
-    private static final String BASE_URL = "https://rickandmortyapi.com/api/";
-    
+    private static final int DEFAULT_BATCH_SIZE = 500;
+
+    private static final String UPSERT_LOCATION =
+            "INSERT INTO location (id, name, type, dimension) VALUES (?, ?, ?, ?) "
+            + "ON CONFLICT (id) DO UPDATE SET name = EXCLUDED.name, type = EXCLUDED.type, dimension = EXCLUDED.dimension";
+    private static final String UPSERT_EPISODE =
+            "INSERT INTO episode (id, name, air_date, episode) VALUES (?, ?, ?, ?) "
+            + "ON CONFLICT (id) DO UPDATE SET name = EXCLUDED.name, air_date = EXCLUDED.air_date, episode = EXCLUDED.episode";
+    private static final String UPSERT_CHARACTER =
+            "INSERT INTO character (id, name, status, species, type, gender, id_origin, id_location) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?) "
+            + "ON CONFLICT (id) DO UPDATE SET name = EXCLUDED.name, status = EXCLUDED.status, species = EXCLUDED.species, "
+            + "type = EXCLUDED.type, gender = EXCLUDED.gender, id_origin = EXCLUDED.id_origin, id_location = EXCLUDED.id_location";
+
+    /**
+     * Forma de escribir los datos en las tablas durante una recarga completa.
+     * - BATCH: INSERT ... ON CONFLICT DO NOTHING agrupados en lotes.
+     * - COPY: protocolo COPY de PostgreSQL a través de tablas temporales.
+     */
+    public enum LoadMode {
+        BATCH,
+        COPY
+    }
+
+    private static volatile int batchSize = DEFAULT_BATCH_SIZE;
+    private static volatile int pipelineCapacity = IngestPipeline.DEFAULT_CAPACITY;
+    private static volatile IngestMetrics lastMetrics;
+
+    /**
+     * Fija el número de filas que se envían en cada lote de inserción.
+     * @param size Filas por lote (mínimo 1)
+     */
+    public static void setBatchSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("El tamaño de lote debe ser al menos 1");
+        }
+        batchSize = size;
+    }
+
+    public static int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Fija cuántos trozos (de una página cada uno) puede haber en la cola entre la descarga y la escritura.
+     * @param capacity Trozos en la cola (mínimo 1)
+     */
+    public static void setPipelineCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("La capacidad de la cola debe ser al menos 1");
+        }
+        pipelineCapacity = capacity;
+    }
+
+    /**
+     * @return Métricas por etapa de la última carga (en curso o terminada), o null si no se ha hecho ninguna
+     */
+    public static IngestMetrics getLastMetrics() {
+        return lastMetrics;
+    }
+
+    /**
+     * Rellena la base de datos con los datos de la API insertando por lotes.
+     */
+    public static void fillDatabase() {
+        fillDatabase(LoadMode.BATCH);
+    }
+
     /**
      * Rellena la base de datos con los datos de la API (locations, episodes, characters).
+     * - Arranca la descarga en segundo plano (tubería con cola acotada), que avanza mientras se escribe.
      * - Vacía las tablas.
      * - Añade una localización "unknown".
-     * - Inserta todas las locations, episodes y characters desde la API.
+     * - Inserta todas las locations, episodes y characters según llegan, con el modo de carga indicado.
      * - Inserta las relaciones character_in_episode.
+     * Todo se hace en una única transacción que se confirma al final.
+     * Al terminar se muestran las métricas de cada etapa, que también quedan en {@link #getLastMetrics()}.
+     * @param mode Modo de escritura en las tablas
      */
-    public static void fillDatabase() {
+    public static void fillDatabase(LoadMode mode) {
+        fillDatabase(mode, new ApiSource());
+    }
+
+    /**
+     * Rellena la base de datos como {@link #fillDatabase(LoadMode)}, pero leyendo los datos
+     * del origen indicado (por ejemplo una instantánea local, ver {@link SnapshotService}).
+     * @param mode Modo de escritura en las tablas
+     * @param origin Origen de los datos
+     */
+    public static void fillDatabase(LoadMode mode, IngestSource origin) {
+        IngestMetrics metrics = IngestMetrics.begin();
+        lastMetrics = metrics;
+        TableLoader loader = (mode == LoadMode.COPY) ? new CopyLoader() : new BatchLoader(batchSize);
+        IngestPipeline source = new IngestPipeline(origin, pipelineCapacity);
         Connection conn = null;
         try {
             conn = DBUtils.getConnection();
@@ -48,7 +131,7 @@ public class DatabaseService {
             // 1. Vaciar la BD
             try {
                 System.out.println("Vaciando la base de datos...");
-                clearDatabase(conn);
+                metrics.time("vaciado", conn, DatabaseService::clearDatabase);
             } catch (SQLException ex) {
                 System.out.println("Error al vaciar la base de datos: " + ex.getMessage());
                 conn.rollback();
@@ -65,66 +148,70 @@ public class DatabaseService {
                 return;
             }
 
-            // 3. Insertar locations
-            List<LocationData> allLocations;
+            // 3. Insertar locations según se descargan
             try {
-                allLocations = getAllLocationsFromAPI();
+                int total;
+                try (IngestMetrics.Timer t = metrics.time("carga location")) {
+                    total = insertLocations(conn, loader, source);
+                    t.rows(total);
+                }
+                System.out.println("Localizaciones añadidas: " + total);
             } catch (IOException | InterruptedException ex) {
                 System.out.println("Error al obtener las locations de la API: " + ex.getMessage());
                 conn.rollback();
                 return;
-            }
-            try {
-                insertLocations(conn, allLocations);
-                System.out.println("Localizaciones añadidas");
             } catch (SQLException ex) {
                 System.out.println("Error al insertar las locations: " + ex.getMessage());
                 conn.rollback();
                 return;
             }
 
-            // 4. Insertar episodes
-            List<EpisodeData> allEpisodes;
+            // 4. Insertar episodes según se descargan
             try {
-                allEpisodes = getAllEpisodesFromAPI();
+                int total;
+                try (IngestMetrics.Timer t = metrics.time("carga episode")) {
+                    total = insertEpisodes(conn, loader, source);
+                    t.rows(total);
+                }
+                System.out.println("Episodios añadidos: " + total);
             } catch (IOException | InterruptedException ex) {
                 System.out.println("Error al obtener los episodios de la API: " + ex.getMessage());
                 conn.rollback();
                 return;
-            }
-            try {
-                insertEpisodes(conn, allEpisodes);
-                System.out.println("Episodios añadidos");
             } catch (SQLException ex) {
                 System.out.println("Error al insertar los episodios: " + ex.getMessage());
                 conn.rollback();
                 return;
             }
 
-            // 5. Insertar characters y sus relaciones con episodes
-            List<CharacterData> allCharacters;
+            // 5. Insertar characters y sus relaciones con episodes según se descargan
             try {
-                allCharacters = getAllCharactersFromAPI();
+                int total;
+                try (IngestMetrics.Timer t = metrics.time("carga character")) {
+                    total = insertCharactersAndRelations(conn, loader, source);
+                    t.rows(total);
+                }
+                System.out.println("Personajes añadidos: " + total);
             } catch (IOException | InterruptedException ex) {
                 System.out.println("Error al obtener los personajes de la API: " + ex.getMessage());
                 conn.rollback();
                 return;
-            }
-            try {
-                insertCharactersAndRelations(conn, allCharacters);
-                System.out.println("Personajes añadidos");
             } catch (SQLException ex) {
                 System.out.println("Error al insertar los personajes y sus relaciones: " + ex.getMessage());
                 conn.rollback();
                 return;
             }
 
-            conn.commit();
+            metrics.time("commit", conn, Connection::commit);
             System.out.println("Base de datos rellenada correctamente.");
 
         } catch (SQLException ex) {
             System.out.println("Error con la base de datos: " + ex.getMessage());
         } finally {
+            source.close();
+            metrics.finish();
+            ApiClient.getCache().printReport();
+            metrics.printReport();
             if (conn != null) {
                 try {
                     conn.setAutoCommit(true);
@@ -136,12 +223,168 @@ public class DatabaseService {
         }
     }
     
+    /**
+     * Refresca desde la API solo los registros indicados, sin recorrer el resto del conjunto de datos.
+     * - Descarga los personajes, localizaciones y episodios pedidos con los endpoints de varios ids
+     *   (por ejemplo "character/1,2,3"), en bloques que se descargan en paralelo.
+     * - Añade las localizaciones y episodios a los que apuntan los personajes y que aún no están en la BD,
+     *   para que se cumplan las claves ajenas.
+     * - Inserta o actualiza (INSERT ... ON CONFLICT DO UPDATE) solo esas filas y sustituye
+     *   los enlaces character_in_episode de los personajes refrescados.
+     * Todo se aplica en una transacción. Los ids que no existen en la API se ignoran y se indican por pantalla.
+     * @param characterIds Ids de personajes a refrescar
+     * @param locationIds Ids de localizaciones a refrescar
+     * @param episodeIds Ids de episodios a refrescar
+     */
+    public static void refresh(Set<Integer> characterIds, Set<Integer> locationIds, Set<Integer> episodeIds) {
+        IngestMetrics metrics = IngestMetrics.begin();
+        lastMetrics = metrics;
+        List<CharacterData> characters = new ArrayList<>();
+        List<LocationData> locations = new ArrayList<>();
+        List<EpisodeData> episodes = new ArrayList<>();
+        Connection conn = null;
+        try {
+            conn = DBUtils.getConnection();
+
+            // 1. Descargar los registros pedidos y los que faltan para las claves ajenas
+            try {
+                ApiClient.fetchByIds("character", characterIds, ApiDecoder::readCharacter, characters::add);
+                reportMissing("character", characterIds, characters, CharacterData::getId);
+
+                Set<Integer> referencedLocations = new HashSet<>();
+                Set<Integer> referencedEpisodes = new HashSet<>();
+                for (CharacterData ch : characters) {
+                    referencedLocations.add(ch.getId_origin());
+                    referencedLocations.add(ch.getId_location());
+                    for (int epId : ch.getEpisodeIds()) {
+                        referencedEpisodes.add(epId);
+                    }
+                }
+                referencedLocations.remove(0); // "unknown" no viene de la API
+                Set<Integer> wantedLocations = new HashSet<>(locationIds);
+                wantedLocations.addAll(missingIds(conn, "location", referencedLocations));
+                Set<Integer> wantedEpisodes = new HashSet<>(episodeIds);
+                wantedEpisodes.addAll(missingIds(conn, "episode", referencedEpisodes));
+
+                ApiClient.fetchByIds("location", wantedLocations, ApiDecoder::readLocation, locations::add);
+                ApiClient.fetchByIds("episode", wantedEpisodes, ApiDecoder::readEpisode, episodes::add);
+                reportMissing("location", wantedLocations, locations, LocationData::getId);
+                reportMissing("episode", wantedEpisodes, episodes, EpisodeData::getId);
+            } catch (IOException | InterruptedException ex) {
+                System.out.println("Error al obtener los datos de la API: " + ex.getMessage());
+                return;
+            }
+
+            // 2. Escribir solo esas filas en una transacción
+            conn.setAutoCommit(false);
+            try {
+                createUnknownLocation(conn);
+                int locs = upsert(conn, "location", UPSERT_LOCATION, locations, BatchLoader::bindLocation);
+                int eps = upsert(conn, "episode", UPSERT_EPISODE, episodes, BatchLoader::bindEpisode);
+                int chars = upsert(conn, "character", UPSERT_CHARACTER, characters, BatchLoader::bindCharacter);
+                int links = replaceLinks(conn, characters);
+                metrics.time("commit", conn, Connection::commit);
+                System.out.println("Refrescados: " + chars + " personajes, " + locs + " localizaciones, "
+                        + eps + " episodios y " + links + " enlaces personaje-episodio.");
+            } catch (SQLException ex) {
+                System.out.println("Error al refrescar los registros: " + ex.getMessage());
+                conn.rollback();
+            }
+        } catch (SQLException ex) {
+            System.out.println("Error con la base de datos: " + ex.getMessage());
+        } finally {
+            metrics.finish();
+            ApiClient.getCache().printReport();
+            metrics.printReport();
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException ex) {
+                    System.out.println("Error al cerrar la conexión: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Muestra los ids pedidos a la API que no han llegado en la respuesta (no existen en la API).
+     */
+    private static <T> void reportMissing(String resource, Set<Integer> wanted, List<T> received, ToIntFunction<T> idOf) {
+        Set<Integer> missing = new TreeSet<>(wanted);
+        for (T record : received) {
+            missing.remove(idOf.applyAsInt(record));
+        }
+        if (!missing.isEmpty()) {
+            System.out.println("No existen en la API (" + resource + "): " + missing);
+        }
+    }
+
+    /**
+     * Devuelve los ids del conjunto que no están en la tabla.
+     */
+    private static Set<Integer> missingIds(Connection conn, String table, Set<Integer> ids) throws SQLException {
+        Set<Integer> missing = new HashSet<>(ids);
+        if (ids.isEmpty()) {
+            return missing;
+        }
+        try (PreparedStatement ps = conn.prepareStatement("SELECT id FROM " + table + " WHERE id = ANY (?)")) {
+            ps.setArray(1, conn.createArrayOf("integer", ids.toArray()));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    missing.remove(rs.getInt(1));
+                }
+            }
+        }
+        return missing;
+    }
+
+    private static <T> int upsert(Connection conn, String table, String sql, List<T> rows,
+                                  BatchInserter.Binder<T> binder) throws SQLException {
+        try (BatchInserter<T> inserter = new BatchInserter<>(conn, table, sql, batchSize, binder)) {
+            inserter.reportAs("insertadas o actualizadas");
+            for (T row : rows) {
+                inserter.add(row);
+            }
+            inserter.flush();
+            return inserter.getInserted();
+        }
+    }
+
+    /**
+     * Sustituye los enlaces character_in_episode de los personajes indicados por los que trae la API.
+     * @return Número de enlaces insertados
+     */
+    private static int replaceLinks(Connection conn, List<CharacterData> characters) throws SQLException {
+        if (characters.isEmpty()) {
+            return 0;
+        }
+        Object[] ids = characters.stream().map(CharacterData::getId).toArray();
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM character_in_episode WHERE id_character = ANY (?)")) {
+            ps.setArray(1, conn.createArrayOf("integer", ids));
+            ps.executeUpdate();
+        }
+        try (BatchInserter<int[]> relations = new BatchInserter<>(conn, "character_in_episode",
+                BatchLoader.INSERT_CHARACTER_IN_EPISODE, batchSize, BatchLoader::bindRelation)) {
+            int[] pair = new int[2];
+            for (CharacterData ch : characters) {
+                pair[0] = ch.getId();
+                for (int epId : ch.getEpisodeIds()) {
+                    pair[1] = epId;
+                    relations.add(pair);
+                }
+            }
+            relations.flush();
+            return relations.getInserted();
+        }
+    }
+
     /**
      * Vacía las tablas character_in_episode, character, episode y location en el orden correcto.
      * @param conn Conexión a la base de datos
      * @throws SQLException si ocurre un error en la eliminación
      */
-    private static void clearDatabase(Connection conn) throws SQLException {
+    static void clearDatabase(Connection conn) throws SQLException {
         // Borramos en el orden adecuado, de más dependientes a menos.
         try (PreparedStatement ps = conn.prepareStatement("DELETE FROM character_in_episode")) {
             ps.executeUpdate();
@@ -166,7 +409,7 @@ public class DatabaseService {
      * @param conn Conexión a la base de datos
      * @throws SQLException si ocurre un error en la inserción
      */
-    private static void createUnknownLocation(Connection conn) throws SQLException {
+    static void createUnknownLocation(Connection conn) throws SQLException {
         try (CallableStatement cs = conn.prepareCall("CALL add_location(?,?,?,?)")) {
             cs.setInt(1, 0);
             cs.setString(2, "unknown");
@@ -177,286 +420,44 @@ public class DatabaseService {
     }
     
     /**
-     * Obtiene todas las localizaciones de la API de Rick and Morty paginadas.
-     * @return Lista con todas las LocationData obtenidas.
-     * @throws IOException si ocurre un error de I/O
-     * @throws InterruptedException si la petición HTTP es interrumpida
-     */
-    private static List<LocationData> getAllLocationsFromAPI() throws IOException, InterruptedException {
-        List<LocationData> result = new ArrayList<>();
-        int page = 1;
-        boolean hasMore = true;
-
-        while (hasMore) {
-            String url = BASE_URL + "location?page=" + page;
-            String response = doGetRequest(url);
-            JsonObject json = JsonParser.parseString(response).getAsJsonObject();
-            if (!json.has("results")) {
-                break;
-            }
-            JsonArray results = json.getAsJsonArray("results");
-
-            if (results == null || results.size() == 0) {
-                hasMore = false;
-                break;
-            }
-
-            for (int i = 0; i < results.size(); i++) {
-                JsonObject loc = results.get(i).getAsJsonObject();
-                int id = loc.get("id").getAsInt();
-                String name = loc.get("name").getAsString();
-                String type = loc.get("type").getAsString();
-                String dimension = loc.get("dimension").getAsString();
-
-                result.add(new LocationData(id, name, type, dimension));
-            }
-
-            JsonObject info = json.get("info").getAsJsonObject();
-            int pages = info.get("pages").getAsInt();
-            page++;
-            if (page > pages) {
-                hasMore = false;
-            }
-        }
-
-        return result;
-    }
-    
-    /**
-     * Inserta una lista de localizaciones en la base de datos usando el procedimiento almacenado add_location.
+     * Escribe con el loader las localizaciones del origen según van llegando.
      * @param conn Conexión a la base de datos
-     * @param locations Lista de objetos LocationData
+     * @param loader Estrategia de escritura
+     * @param source Origen de los datos
+     * @return Número de localizaciones insertadas (las que ya existían no cuentan)
      * @throws SQLException si ocurre un error en la inserción
+     * @throws IOException si ocurre un error de I/O o alguna página no es válida
+     * @throws InterruptedException si la descarga es interrumpida
      */
-    private static void insertLocations(Connection conn, List<LocationData> locations) throws SQLException {
-        try (CallableStatement cs = conn.prepareCall("CALL add_location(?,?,?,?)")) {
-            for (LocationData loc : locations) {
-                cs.setInt(1, loc.getId());
-                cs.setString(2, loc.getName());
-                cs.setString(3, loc.getType());
-                cs.setString(4, loc.getDimension());
-                cs.execute();
-            }
-        }
+    private static int insertLocations(Connection conn, TableLoader loader, IngestSource source) throws SQLException, IOException, InterruptedException {
+        return loader.loadLocations(conn, source::locations);
     }
     
     /**
-     * Obtiene todos los episodios de la API de Rick and Morty paginados.
-     * Convierte la fecha de emisión (air_date) a java.sql.Date.
-     * @return Lista con todos los EpisodeData obtenidos.
-     * @throws IOException si ocurre un error de I/O
-     * @throws InterruptedException si la petición HTTP es interrumpida
-     */
-    private static List<EpisodeData> getAllEpisodesFromAPI() throws IOException, InterruptedException {
-        List<EpisodeData> result = new ArrayList<>();
-        int page = 1;
-        boolean hasMore = true;
-        SimpleDateFormat sdf = new SimpleDateFormat("MMMM d, yyyy", Locale.ENGLISH);
-
-        while (hasMore) {
-            String url = BASE_URL + "episode?page=" + page;
-            String response = doGetRequest(url);
-            JsonObject json = JsonParser.parseString(response).getAsJsonObject();
-            if (!json.has("results")) {
-                break;
-            }
-            JsonArray results = json.getAsJsonArray("results");
-
-            if (results == null || results.size() == 0) {
-                hasMore = false;
-                break;
-            }
-
-            for (int i = 0; i < results.size(); i++) {
-                JsonObject ep = results.get(i).getAsJsonObject();
-                int id = ep.get("id").getAsInt();
-                String name = ep.get("name").getAsString();
-                String air_date_str = ep.get("air_date").getAsString();
-                String episodeCode = ep.get("episode").getAsString();
-
-                java.util.Date parsedDate;
-                try {
-                    parsedDate = sdf.parse(air_date_str);
-                } catch (Exception ex) {
-                    parsedDate = new java.util.Date();
-                }
-                Date air_date = new Date(parsedDate.getTime());
-
-                result.add(new EpisodeData(id, name, air_date, episodeCode));
-            }
-
-            JsonObject info = json.get("info").getAsJsonObject();
-            int pages = info.get("pages").getAsInt();
-            page++;
-            if (page > pages) {
-                hasMore = false;
-            }
-        }
-        return result;
-    }
-    
-    /**
-     * Inserta una lista de episodios en la base de datos usando el procedimiento almacenado add_episode.
+     * Escribe con el loader los episodios del origen según van llegando.
      * @param conn Conexión a la base de datos
-     * @param episodes Lista de objetos EpisodeData
+     * @param loader Estrategia de escritura
+     * @param source Origen de los datos
+     * @return Número de episodios insertados (los que ya existían no cuentan)
      * @throws SQLException si ocurre un error en la inserción
+     * @throws IOException si ocurre un error de I/O o alguna página no es válida
+     * @throws InterruptedException si la descarga es interrumpida
      */
-    private static void insertEpisodes(Connection conn, List<EpisodeData> episodes) throws SQLException {
-        try (CallableStatement cs = conn.prepareCall("CALL add_episode(?,?,?,?)")) {
-            for (EpisodeData ep : episodes) {
-                cs.setInt(1, ep.getId());
-                cs.setString(2, ep.getName());
-                cs.setDate(3, ep.getAir_date());
-                cs.setString(4, ep.getEpisode());
-                cs.execute();
-            }
-        }
+    private static int insertEpisodes(Connection conn, TableLoader loader, IngestSource source) throws SQLException, IOException, InterruptedException {
+        return loader.loadEpisodes(conn, source::episodes);
     }
     
     /**
-     * Obtiene todos los personajes de la API de Rick and Morty paginados.
-     * Para cada personaje obtiene su id, nombre, estado, especie, tipo, género, así como las URLs de su origin
-     * y location para extraer sus IDs. También lista los episodios en los que aparece.
-     * @return Lista con todos los CharacterData obtenidos.
-     * @throws IOException si ocurre un error de I/O
-     * @throws InterruptedException si la petición HTTP es interrumpida
-     */
-    private static List<CharacterData> getAllCharactersFromAPI() throws IOException, InterruptedException {
-        List<CharacterData> result = new ArrayList<>();
-        int page = 1;
-        boolean hasMore = true;
-
-        while (hasMore) {
-            String url = BASE_URL + "character?page=" + page;
-            String response = doGetRequest(url);
-            JsonObject json = JsonParser.parseString(response).getAsJsonObject();
-            if (!json.has("results")) {
-                break;
-            }
-            JsonArray results = json.getAsJsonArray("results");
-
-            if (results == null || results.size() == 0) {
-                hasMore = false;
-                break;
-            }
-
-            for (int i = 0; i < results.size(); i++) {
-                JsonObject ch = results.get(i).getAsJsonObject();
-                int id = ch.get("id").getAsInt();
-                String name = ch.get("name").getAsString();
-                String status = ch.get("status").getAsString();
-                String species = ch.get("species").getAsString();
-                String type = ch.get("type").getAsString();
-                String gender = ch.get("gender").getAsString();
-
-                JsonObject origin = ch.getAsJsonObject("origin");
-                JsonObject location = ch.getAsJsonObject("location");
-
-                int id_origin = getLocationIdFromUrl(origin.get("url").getAsString());
-                int id_location = getLocationIdFromUrl(location.get("url").getAsString());
-
-                JsonArray episodes = ch.getAsJsonArray("episode");
-                List<Integer> episodeIds = new ArrayList<>();
-                for (int e = 0; e < episodes.size(); e++) {
-                    String epUrl = episodes.get(e).getAsString();
-                    int epId = getIdFromUrl(epUrl);
-                    episodeIds.add(epId);
-                }
-
-                result.add(new CharacterData(id, name, status, species, type, gender, id_origin, id_location, episodeIds));
-            }
-
-            JsonObject info = json.get("info").getAsJsonObject();
-            int pages = info.get("pages").getAsInt();
-            page++;
-            if (page > pages) {
-                hasMore = false;
-            }
-        }
-        return result;
-    }
-    
-    /**
-     * Inserta personajes y sus relaciones con episodios en la base de datos.
-     * - Inserta cada personaje usando add_character.
-     * - Inserta cada relación personaje-episodio usando add_character_in_episode.
+     * Escribe con el loader los personajes del origen junto a sus relaciones con episodios.
      * @param conn Conexión a la base de datos
-     * @param characters Lista de objetos CharacterData
+     * @param loader Estrategia de escritura
+     * @param source Origen de los datos
+     * @return Número de personajes insertados (los que ya existían no cuentan)
      * @throws SQLException si ocurre un error en la inserción
+     * @throws IOException si ocurre un error de I/O o alguna página no es válida
+     * @throws InterruptedException si la descarga es interrumpida
      */
-    private static void insertCharactersAndRelations(Connection conn, List<CharacterData> characters) throws SQLException {
-        try (CallableStatement csChar = conn.prepareCall("CALL add_character(?,?,?,?,?,?,?,?)");
-             CallableStatement csRel = conn.prepareCall("CALL add_character_in_episode(?,?)")) {
-            for (CharacterData ch : characters) {
-                csChar.setInt(1, ch.getId());
-                csChar.setString(2, ch.getName());
-                csChar.setString(3, ch.getStatus());
-                csChar.setString(4, ch.getSpecies());
-                csChar.setString(5, ch.getType());
-                csChar.setString(6, ch.getGender());
-                csChar.setInt(7, ch.getId_origin());
-                csChar.setInt(8, ch.getId_location());
-                csChar.execute();
-
-                for (Integer epId : ch.getEpisodeIds()) {
-                    csRel.setInt(1, ch.getId());
-                    csRel.setInt(2, epId);
-                    csRel.execute();
-                }
-            }
-        }
-    }
-    
-    /**
-     * Realiza una petición HTTP GET a la URL especificada y retorna la respuesta como string.
-     * @param url URL a la que se realizará la petición
-     * @return Cuerpo de la respuesta HTTP
-     * @throws IOException si ocurre un error de I/O
-     * @throws InterruptedException si la petición HTTP es interrumpida
-     */
-    private static String doGetRequest(String url) throws IOException, InterruptedException {
-        HttpClient client = HttpClient.newHttpClient();
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .GET()
-                .build();
-        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-        return response.body();
-    }
-    
-    /**
-     * Dada una URL de una location o similar, extrae el último segmento numérico y lo retorna como int.
-     * Si no se puede extraer, retorna 0.
-     * @param url URL de la que extraer el ID
-     * @return ID extraído o 0 si falla
-     */
-    private static int getLocationIdFromUrl(String url) {
-        if (url == null || url.isBlank()) {
-            return 0;
-        }
-        String[] parts = url.split("/");
-        try {
-            return Integer.parseInt(parts[parts.length - 1]);
-        } catch (NumberFormatException e) {
-            return 0;
-        }
-    }
-    
-    /**
-     * Dada una URL (por ejemplo de un episodio), extrae el último segmento numérico como ID.
-     * Si no se puede extraer, retorna 0.
-     * @param url URL de la que extraer el ID
-     * @return ID extraído o 0 si falla
-     */
-    private static int getIdFromUrl(String url) {
-        if (url == null || url.isBlank()) {
-            return 0;
-        }
-        String[] parts = url.split("/");
-        try {
-            return Integer.parseInt(parts[parts.length - 1]);
-        } catch (NumberFormatException e) {
-            return 0;
-        }
+    private static int insertCharactersAndRelations(Connection conn, TableLoader loader, IngestSource source) throws SQLException, IOException, InterruptedException {
+        return loader.loadCharacters(conn, source::characters);
     }
 }
@@ -0,0 +1,332 @@
+package services;
+
+import utils.ApiClient;
+import utils.BatchInserter;
+import utils.DBUtils;
+import utils.Fingerprint;
+import utils.IngestMetrics;
+import utils.UncheckedSQLException;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Sincronización incremental de la base de datos con la API, sin vaciar las tablas.
+ * Compara cada registro de la API con la fila existente por id y por una huella de su contenido
+ * y solo inserta, actualiza o borra las filas que difieren (incluidos los enlaces de character_in_episode).
+ * Todo se aplica en una transacción, así que los lectores ven el estado anterior hasta el commit.
+ * La base de datos queda como espejo de la API: lo que no está en la API se borra, salvo la localización "unknown" (id 0).
+ */
+public class DeltaSync {
+
+    private static final String UPDATE_LOCATION =
+            "UPDATE location SET name = ?, type = ?, dimension = ? WHERE id = ?";
+    private static final String UPDATE_EPISODE =
+            "UPDATE episode SET name = ?, air_date = ?, episode = ? WHERE id = ?";
+    private static final String UPDATE_CHARACTER =
+            "UPDATE character SET name = ?, status = ?, species = ?, type = ?, gender = ?, id_origin = ?, id_location = ? WHERE id = ?";
+    private static final String DELETE_CHARACTER_IN_EPISODE =
+            "DELETE FROM character_in_episode WHERE id_character = ? AND id_episode = ?";
+
+    /**
+     * Descarga los datos de la API y aplica solo las diferencias con la base de datos.
+     * Al terminar muestra un resumen de filas cambiadas por tabla.
+     */
+    public static void syncDatabase() {
+        IngestMetrics metrics = IngestMetrics.begin();
+        try {
+            StagingBuffer staged = new StagingBuffer();
+            try {
+                System.out.println("Descargando datos de la API...");
+                IngestSource source = new ApiSource();
+                source.locations(staged.getLocations()::add);
+                source.episodes(staged.getEpisodes()::add);
+                source.characters(staged.getCharacters()::add);
+            } catch (IOException | InterruptedException | SQLException ex) {
+                System.out.println("Error al obtener los datos de la API: " + ex.getMessage());
+                return;
+            } finally {
+                ApiClient.getCache().printReport();
+            }
+            staged.printFootprint();
+            applyChanges(staged, metrics);
+        } finally {
+            metrics.finish();
+            metrics.printReport();
+        }
+    }
+
+    /**
+     * Compara lo descargado con la base de datos y aplica las diferencias en una transacción.
+     */
+    private static void applyChanges(StagingBuffer staged, IngestMetrics metrics) {
+        StagingBuffer.Locations locs = staged.getLocations();
+        StagingBuffer.Episodes eps = staged.getEpisodes();
+        StagingBuffer.Characters chars = staged.getCharacters();
+        Connection conn = null;
+        try {
+            conn = DBUtils.getConnection();
+            conn.setAutoCommit(false);
+
+            try {
+                DatabaseService.createUnknownLocation(conn);
+
+                Diff locDiff = diff(locs.size(), locs::getId, row -> locationFingerprint(locs, row),
+                        readFingerprints(conn, "SELECT id, name, type, dimension FROM location", DeltaSync::locationFingerprint));
+                locDiff.deletes.remove(Integer.valueOf(0)); // la localización "unknown" no viene de la API
+                Diff epDiff = diff(eps.size(), eps::getId, row -> episodeFingerprint(eps, row),
+                        readFingerprints(conn, "SELECT id, name, air_date, episode FROM episode", DeltaSync::episodeFingerprint));
+                Diff chDiff = diff(chars.size(), chars::getId, row -> characterFingerprint(chars, row),
+                        readFingerprints(conn, "SELECT id, name, status, species, type, gender, id_origin, id_location FROM character",
+                                DeltaSync::characterFingerprint));
+
+                Set<Long> apiLinks = new HashSet<>();
+                for (int row = 0; row < chars.size(); row++) {
+                    for (int k = 0; k < chars.getEpisodeCount(row); k++) {
+                        apiLinks.add(link(chars.getId(row), chars.getEpisodeId(row, k)));
+                    }
+                }
+                Set<Long> dbLinks = readLinks(conn);
+                List<Long> addedLinks = new ArrayList<>();
+                for (Long l : apiLinks) {
+                    if (!dbLinks.contains(l)) addedLinks.add(l);
+                }
+                List<Long> removedLinks = new ArrayList<>();
+                for (Long l : dbLinks) {
+                    if (!apiLinks.contains(l)) removedLinks.add(l);
+                }
+
+                // Orden compatible con las claves ajenas: primero altas y cambios de las tablas referenciadas,
+                // después personajes y enlaces, y por último las bajas de lo que deja de estar referenciado.
+                // Las filas de los diffs son posiciones en el buffer; los binders leen de sus columnas
+                locDiff.inserted = apply(conn, "location", BatchLoader.INSERT_LOCATION, locDiff.inserts,
+                        (ps, row) -> BatchLoader.bindLocation(ps, locs.toData(row)), "insertadas");
+                locDiff.updated = apply(conn, "location", UPDATE_LOCATION, locDiff.updates,
+                        (ps, row) -> bindLocationUpdate(ps, locs, row), "actualizadas");
+                epDiff.inserted = apply(conn, "episode", BatchLoader.INSERT_EPISODE, epDiff.inserts,
+                        (ps, row) -> BatchLoader.bindEpisode(ps, eps.toData(row)), "insertadas");
+                epDiff.updated = apply(conn, "episode", UPDATE_EPISODE, epDiff.updates,
+                        (ps, row) -> bindEpisodeUpdate(ps, eps, row), "actualizadas");
+                chDiff.inserted = apply(conn, "character", BatchLoader.INSERT_CHARACTER, chDiff.inserts,
+                        (ps, row) -> BatchLoader.bindCharacter(ps, chars.toData(row)), "insertadas");
+                chDiff.updated = apply(conn, "character", UPDATE_CHARACTER, chDiff.updates,
+                        (ps, row) -> bindCharacterUpdate(ps, chars, row), "actualizadas");
+
+                int linksDeleted = apply(conn, "character_in_episode", DELETE_CHARACTER_IN_EPISODE, removedLinks, DeltaSync::bindLink, "borradas");
+                int linksInserted = apply(conn, "character_in_episode", BatchLoader.INSERT_CHARACTER_IN_EPISODE, addedLinks, DeltaSync::bindLink, "insertadas");
+
+                chDiff.deleted = apply(conn, "character", "DELETE FROM character WHERE id = ?", chDiff.deletes, DeltaSync::bindId, "borradas");
+                epDiff.deleted = apply(conn, "episode", "DELETE FROM episode WHERE id = ?", epDiff.deletes, DeltaSync::bindId, "borradas");
+                locDiff.deleted = apply(conn, "location", "DELETE FROM location WHERE id = ?", locDiff.deletes, DeltaSync::bindId, "borradas");
+
+                metrics.time("commit", conn, Connection::commit);
+
+                System.out.println("\nResumen de la sincronización:");
+                printSummary("location", locDiff.inserted, locDiff.updated, locDiff.deleted);
+                printSummary("episode", epDiff.inserted, epDiff.updated, epDiff.deleted);
+                printSummary("character", chDiff.inserted, chDiff.updated, chDiff.deleted);
+                printSummary("character_in_episode", linksInserted, 0, linksDeleted);
+            } catch (SQLException ex) {
+                System.out.println("Error al sincronizar la base de datos: " + ex.getMessage());
+                conn.rollback();
+            }
+        } catch (SQLException ex) {
+            System.out.println("Error con la base de datos: " + ex.getMessage());
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException ex) {
+                    System.out.println("Error al cerrar la conexión: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Cambios a aplicar en una tabla y cuántos se aplicaron realmente.
+     * Altas y cambios son filas del buffer; las bajas, ids de la base de datos.
+     */
+    private static final class Diff {
+        final List<Integer> inserts = new ArrayList<>();
+        final List<Integer> updates = new ArrayList<>();
+        final List<Integer> deletes = new ArrayList<>();
+        int inserted;
+        int updated;
+        int deleted;
+    }
+
+    /**
+     * Compara los registros de la API con las huellas de las filas existentes.
+     */
+    private static Diff diff(int rows, IntUnaryOperator idOf, IntToLongFunction fingerprint, Map<Integer, Long> existing) {
+        Diff diff = new Diff();
+        int[] apiIds = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            int id = idOf.applyAsInt(row);
+            apiIds[row] = id;
+            Long current = existing.get(id);
+            if (current == null) {
+                diff.inserts.add(row);
+            } else if (current != fingerprint.applyAsLong(row)) {
+                diff.updates.add(row);
+            }
+        }
+        Arrays.sort(apiIds);
+        for (Integer id : existing.keySet()) {
+            if (Arrays.binarySearch(apiIds, id) < 0) {
+                diff.deletes.add(id);
+            }
+        }
+        return diff;
+    }
+
+    @FunctionalInterface
+    private interface RowFingerprint {
+        long of(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Lee id y huella de todas las filas de la tabla con un cursor, sin cargar el resultado entero en memoria
+     * (la primera columna de la consulta es el id).
+     */
+    private static Map<Integer, Long> readFingerprints(Connection conn, String sql, RowFingerprint fingerprint) throws SQLException {
+        Map<Integer, Long> result = new HashMap<>();
+        try (Stream<Map.Entry<Integer, Long>> rows = DBUtils.stream(conn, sql,
+                rs -> Map.entry(rs.getInt(1), fingerprint.of(rs)), DBUtils.DEFAULT_FETCH_SIZE)) {
+            rows.forEach(e -> result.put(e.getKey(), e.getValue()));
+        } catch (UncheckedSQLException ex) {
+            throw ex.getCause();
+        }
+        return result;
+    }
+
+    private static Set<Long> readLinks(Connection conn) throws SQLException {
+        Set<Long> result = new HashSet<>();
+        try (Stream<Long> rows = DBUtils.stream(conn, "SELECT id_character, id_episode FROM character_in_episode",
+                rs -> link(rs.getInt(1), rs.getInt(2)), DBUtils.DEFAULT_FETCH_SIZE)) {
+            rows.forEach(result::add);
+        } catch (UncheckedSQLException ex) {
+            throw ex.getCause();
+        }
+        return result;
+    }
+
+    private static long locationFingerprint(StagingBuffer.Locations locs, int row) {
+        long h = Fingerprint.add(Fingerprint.START, locs.getName(row));
+        h = Fingerprint.add(h, locs.getType(row));
+        return Fingerprint.add(h, locs.getDimension(row));
+    }
+
+    private static long locationFingerprint(ResultSet rs) throws SQLException {
+        long h = Fingerprint.add(Fingerprint.START, rs.getString("name"));
+        h = Fingerprint.add(h, rs.getString("type"));
+        return Fingerprint.add(h, rs.getString("dimension"));
+    }
+
+    private static long episodeFingerprint(StagingBuffer.Episodes eps, int row) {
+        java.sql.Date airDate = eps.getAirDate(row);
+        long h = Fingerprint.add(Fingerprint.START, eps.getName(row));
+        h = Fingerprint.add(h, airDate != null ? airDate.toString() : null);
+        return Fingerprint.add(h, eps.getEpisode(row));
+    }
+
+    private static long episodeFingerprint(ResultSet rs) throws SQLException {
+        java.sql.Date airDate = rs.getDate("air_date");
+        long h = Fingerprint.add(Fingerprint.START, rs.getString("name"));
+        h = Fingerprint.add(h, airDate != null ? airDate.toString() : null);
+        return Fingerprint.add(h, rs.getString("episode"));
+    }
+
+    private static long characterFingerprint(StagingBuffer.Characters chars, int row) {
+        long h = Fingerprint.add(Fingerprint.START, chars.getName(row));
+        h = Fingerprint.add(h, chars.getStatus(row));
+        h = Fingerprint.add(h, chars.getSpecies(row));
+        h = Fingerprint.add(h, chars.getType(row));
+        h = Fingerprint.add(h, chars.getGender(row));
+        h = Fingerprint.add(h, chars.getIdOrigin(row));
+        return Fingerprint.add(h, chars.getIdLocation(row));
+    }
+
+    private static long characterFingerprint(ResultSet rs) throws SQLException {
+        long h = Fingerprint.add(Fingerprint.START, rs.getString("name"));
+        h = Fingerprint.add(h, rs.getString("status"));
+        h = Fingerprint.add(h, rs.getString("species"));
+        h = Fingerprint.add(h, rs.getString("type"));
+        h = Fingerprint.add(h, rs.getString("gender"));
+        // Un origen/ubicación NULL (localización borrada) no es lo mismo que 0 ("unknown")
+        h = Fingerprint.add(h, (Integer) rs.getObject("id_origin"));
+        return Fingerprint.add(h, (Integer) rs.getObject("id_location"));
+    }
+
+    private static <T> int apply(Connection conn, String table, String sql, List<T> rows,
+                                 BatchInserter.Binder<T> binder, String action) throws SQLException {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        try (BatchInserter<T> batch = new BatchInserter<>(conn, table, sql, DatabaseService.getBatchSize(), binder)) {
+            batch.reportAs(action);
+            for (T row : rows) {
+                batch.add(row);
+            }
+            batch.flush();
+            return batch.getInserted();
+        }
+    }
+
+    private static void printSummary(String table, int inserted, int updated, int deleted) {
+        System.out.println("  " + table + ": " + inserted + " insertadas, " + updated + " actualizadas, " + deleted + " borradas");
+    }
+
+    private static long link(int idCharacter, int idEpisode) {
+        return ((long) idCharacter << 32) | (idEpisode & 0xFFFFFFFFL);
+    }
+
+    private static void bindLink(PreparedStatement ps, Long link) throws SQLException {
+        ps.setInt(1, (int) (link >>> 32));
+        ps.setInt(2, (int) link.longValue());
+    }
+
+    private static void bindId(PreparedStatement ps, Integer id) throws SQLException {
+        ps.setInt(1, id);
+    }
+
+    private static void bindLocationUpdate(PreparedStatement ps, StagingBuffer.Locations locs, int row) throws SQLException {
+        ps.setString(1, locs.getName(row));
+        ps.setString(2, locs.getType(row));
+        ps.setString(3, locs.getDimension(row));
+        ps.setInt(4, locs.getId(row));
+    }
+
+    private static void bindEpisodeUpdate(PreparedStatement ps, StagingBuffer.Episodes eps, int row) throws SQLException {
+        ps.setString(1, eps.getName(row));
+        ps.setDate(2, eps.getAirDate(row));
+        ps.setString(3, eps.getEpisode(row));
+        ps.setInt(4, eps.getId(row));
+    }
+
+    private static void bindCharacterUpdate(PreparedStatement ps, StagingBuffer.Characters chars, int row) throws SQLException {
+        ps.setString(1, chars.getName(row));
+        ps.setString(2, chars.getStatus(row));
+        ps.setString(3, chars.getSpecies(row));
+        ps.setString(4, chars.getType(row));
+        ps.setString(5, chars.getGender(row));
+        ps.setInt(6, chars.getIdOrigin(row));
+        ps.setInt(7, chars.getIdLocation(row));
+        ps.setInt(8, chars.getId(row));
+    }
+}
@@ -1,10 +1,13 @@
 package services;
 
+import models.Episode;
 import utils.HibernateUtils;
 import utils.IntValidator;
+import utils.KeysetPager;
 
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
+import org.hibernate.StatelessSession;
 import org.hibernate.Transaction;
 
 import jakarta.persistence.PersistenceException;
@@ -18,34 +21,50 @@ public class EpisodeService {
     private static final Scanner scanner = new Scanner(System.in);
 
     /**
-     * Muestra todos los episodios disponibles con todos sus atributos
+     * Muestra todos los episodios disponibles con todos sus atributos, página a página (ver {@link KeysetPager})
      */
     public static void listarTodosLosEpisodios() {
-        try (Session session = HibernateUtils.getSession()) {
-        	 List<Object[]> resultados = session.createNativeQuery(
-        	            "SELECT id, name, air_date, episode FROM episode ORDER BY id"
-        	        ).list();
-
-        	        if (resultados.isEmpty()) {
-        	            System.out.println("No hay episodios registrados.");
-        	            return;
-        	        }
-
-        	        System.out.println("\nLista completa de episodios:");
-        	        for (Object[] fila : resultados) {
-        	            Integer id = (Integer) fila[0];
-        	            String name = (String) fila[1];
-        	            Date airDate = (Date) fila[2];
-        	            String code = (String) fila[3];
-
-        	            System.out.println("ID: " + id + " | Nombre: " + name +
-        	                               " | Fecha emisión: " + airDate +
-        	                               " | Código: " + code);
-        	        }
+        try {
+            boolean hayEpisodios = KeysetPager.browse(scanner, "Lista completa de episodios",
+                    EpisodeService::obtenerPaginaDeEpisodios, fila -> (Integer) fila[0],
+                    fila -> {
+                        Integer id = (Integer) fila[0];
+                        String name = (String) fila[1];
+                        Date airDate = (Date) fila[2];
+                        String code = (String) fila[3];
+
+                        System.out.println("ID: " + id + " | Nombre: " + name +
+                                           " | Fecha emisión: " + airDate +
+                                           " | Código: " + code);
+                    });
+
+            if (!hayEpisodios) {
+                System.out.println("No hay episodios registrados.");
+            }
         } catch (PersistenceException e) {
             System.out.println("Error de persistencia al listar los episodios: " + e.getMessage());
         }
     }
+
+    /**
+     * Devuelve una página de episodios (id, name, air_date, episode) ordenados por ID,
+     * empezando después del ID indicado (paginación por clave).
+     * @param despuesDeId Solo se devuelven episodios con ID mayor que este
+     * @param tamaño Número máximo de episodios de la página
+     * @return Filas de la página
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Object[]> obtenerPaginaDeEpisodios(int despuesDeId, int tamaño) {
+        try (Session session = HibernateUtils.getReadOnlySession()) {
+            return session.createNativeQuery(
+                    "SELECT id, name, air_date, episode FROM episode WHERE id > :despues ORDER BY id")
+                    .addSynchronizedEntityClass(Episode.class) // la caché de la consulta depende de la tabla episode
+                    .setParameter("despues", despuesDeId)
+                    .setMaxResults(tamaño)
+                    .setCacheable(true)
+                    .list();
+        }
+    }
     
     /**
      * Inserta un nuevo episodio en la base de datos utilizando Native Query
@@ -104,6 +123,7 @@ public class EpisodeService {
             // Inserción en la BD
             Transaction tx = session.beginTransaction();
             session.createNativeQuery("CALL add_episode(:id, :name, :air_date, :code)")
+                    .addSynchronizedEntityClass(Episode.class) // solo invalida la caché de episodios
                     .setParameter("id", id)
                     .setParameter("name", name)
                     .setParameter("air_date", airDate)
@@ -144,7 +164,7 @@ public class EpisodeService {
         System.out.print("Introduce el texto a buscar en el nombre del episodio: ");
         String texto = scanner.nextLine().trim();
 
-        try (Session session = HibernateUtils.getSession()) {
+        try (StatelessSession session = HibernateUtils.getStatelessSession()) {
             List<Object[]> resultados = session.createNativeQuery(
                     "SELECT id, name, air_date, episode FROM episode WHERE LOWER(name) LIKE LOWER(:text) ORDER BY id")
                     .setParameter("text", "%" + texto + "%")
@@ -174,7 +194,7 @@ public class EpisodeService {
      * Busca y muestra el episodio en el que aparecen más personajes
      */
     public static void buscarEpisodioConMasPersonajes() {
-        try (Session session = HibernateUtils.getSession()) {
+        try (StatelessSession session = HibernateUtils.getStatelessSession()) {
             Object[] resultado = (Object[]) session.createNativeQuery(
                 "SELECT e.id, e.name, COUNT(ce.id_character) AS total " +
                 "FROM episode e JOIN character_in_episode ce ON e.id = ce.id_episode " +
@@ -257,6 +277,7 @@ public class EpisodeService {
 
             tx = session.beginTransaction();
             session.createNativeQuery("UPDATE episode SET name = :name, air_date = :date, episode = :code WHERE id = :id")
+                    .addSynchronizedEntityClass(Episode.class)
                     .setParameter("name", nuevoNombre)
                     .setParameter("date", nuevaFecha)
                     .setParameter("code", nuevoCodigo)
@@ -314,8 +335,12 @@ public class EpisodeService {
             }
 
             tx = session.beginTransaction();
-            session.createNativeQuery("DELETE FROM character_in_episode WHERE id_episode = :id").setParameter("id", id).executeUpdate();
-            session.createNativeQuery("DELETE FROM episode WHERE id = :id").setParameter("id", id).executeUpdate();
+            session.createNativeQuery("DELETE FROM character_in_episode WHERE id_episode = :id")
+                    .addSynchronizedQuerySpace("character_in_episode")
+                    .setParameter("id", id).executeUpdate();
+            session.createNativeQuery("DELETE FROM episode WHERE id = :id")
+                    .addSynchronizedEntityClass(Episode.class)
+                    .setParameter("id", id).executeUpdate();
             tx.commit();
 
             System.out.println("Episodio eliminado correctamente.");
@@ -407,6 +432,7 @@ public class EpisodeService {
                             INSERT INTO character_in_episode (id_character, id_episode)
                             VALUES (:charId, :epId)
                         """)
+                        .addSynchronizedQuerySpace("character_in_episode")
                         .setParameter("charId", idPersonaje)
                         .setParameter("epId", idEpisodio)
                         .executeUpdate();
@@ -0,0 +1,171 @@
+package services;
+
+import utils.HibernateUtils;
+import utils.IngestMetrics;
+
+import java.io.IOException;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Ejecuta las cargas de la base de datos en segundo plano, en un hilo propio, para que los menús
+ * sigan disponibles (por ejemplo para consultas) mientras dura la carga.
+ * - Solo puede haber una carga a la vez: si ya hay una en marcha, la nueva se rechaza.
+ * - El progreso (páginas descargadas, filas insertadas y tiempo restante estimado) se calcula
+ *   con las métricas de la carga en curso ({@link IngestMetrics}).
+ * - La cancelación interrumpe el hilo de la carga, que se detiene en su siguiente espera
+ *   (cola de la tubería, descarga de páginas) y deshace su transacción.
+ * - Al terminar (bien, con error o cancelada) se vacían la caché de segundo nivel de Hibernate
+ *   y el diccionario de atributos de los personajes.
+ */
+public class FillJob {
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "fill-job");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Se pone a true al aceptar una carga y a false cuando su hilo termina de verdad (también si se cancela)
+    private static final AtomicBoolean running = new AtomicBoolean();
+
+    private static volatile Future<?> future;
+    private static volatile String name;
+    private static volatile IngestMetrics previousMetrics;
+    private static volatile boolean cancelled;
+
+    /**
+     * Lanza la carga en segundo plano si no hay otra en marcha.
+     * @param jobName Nombre de la carga para los mensajes
+     * @param load Carga que se ejecuta
+     * @return true si se ha lanzado, false si se rechaza porque ya hay una carga en marcha
+     */
+    public static boolean start(String jobName, Runnable load) {
+        if (!running.compareAndSet(false, true)) {
+            System.out.println("Ya hay una carga en marcha (" + name + "). Espera a que termine o cancélala.");
+            return false;
+        }
+        name = jobName;
+        cancelled = false;
+        previousMetrics = IngestMetrics.current();
+        future = executor.submit(() -> {
+            try {
+                load.run();
+            } catch (RuntimeException ex) {
+                System.out.println("Error en la carga '" + jobName + "': " + ex.getMessage());
+            } finally {
+                // Las cargas escriben con JDBC, por detrás de Hibernate: lo que tenga en caché puede estar caducado
+                HibernateUtils.evictCache();
+                AttributeDictionary.invalidate();
+                running.set(false);
+                System.out.println("\nCarga '" + jobName + "' terminada" + (cancelled ? " (cancelada)." : "."));
+            }
+        });
+        System.out.println("Carga '" + jobName + "' iniciada en segundo plano. Puedes seguir usando los menús.");
+        return true;
+    }
+
+    public static boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Pide la cancelación de la carga en marcha.
+     * @return false si no había ninguna carga en marcha
+     */
+    public static boolean cancel() {
+        Future<?> f = future;
+        if (!running.get() || f == null) {
+            System.out.println("No hay ninguna carga en marcha.");
+            return false;
+        }
+        cancelled = true;
+        f.cancel(true);
+        System.out.println("Cancelando la carga '" + name + "'...");
+        return true;
+    }
+
+    /**
+     * Muestra una línea con el progreso de la carga en marcha.
+     */
+    public static void printProgress() {
+        if (!running.get()) {
+            System.out.println("No hay ninguna carga en marcha.");
+            return;
+        }
+        System.out.println(progressLine());
+    }
+
+    /**
+     * Muestra el progreso cada segundo hasta que termina la carga o se pulsa Intro.
+     * @param scanner Scanner de la entrada estándar, para consumir la línea del Intro
+     */
+    public static void followProgress(Scanner scanner) {
+        if (!running.get()) {
+            System.out.println("No hay ninguna carga en marcha.");
+            return;
+        }
+        System.out.println("Mostrando el progreso (pulsa Intro para volver al menú)...");
+        try {
+            while (running.get()) {
+                System.out.println(progressLine());
+                if (System.in.available() > 0) {
+                    scanner.nextLine();
+                    return;
+                }
+                TimeUnit.SECONDS.sleep(1);
+            }
+        } catch (IOException ex) {
+            System.out.println("Error al leer la entrada: " + ex.getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Progreso a partir de las métricas: las etapas "http &lt;recurso&gt;" cuentan las páginas descargadas
+     * y las previstas (que se conocen al leer la primera página de cada recurso), y las "insert &lt;tabla&gt;"
+     * las filas escritas. El tiempo restante se estima con el ritmo de páginas hasta ahora,
+     * así que es aproximado mientras no se conocen las páginas de todos los recursos.
+     */
+    private static String progressLine() {
+        IngestMetrics metrics = IngestMetrics.current();
+        if (metrics == previousMetrics) {
+            return "Carga '" + name + "': empezando...";
+        }
+        long pages = 0;
+        long expected = 0;
+        long rows = 0;
+        for (IngestMetrics.Stage stage : metrics.getStages()) {
+            if (stage.getName().startsWith("http ")) {
+                pages += stage.getCalls();
+                expected += stage.getExpected();
+            } else if (stage.getName().startsWith("insert ")) {
+                rows += stage.getRows();
+            }
+        }
+        long elapsedMillis = (long) metrics.getTotalMillis();
+        StringBuilder line = new StringBuilder("Carga '").append(name).append("': ")
+                .append(formatMillis(elapsedMillis)).append(" transcurrido, ")
+                .append(pages).append(" páginas descargadas");
+        if (expected > 0) {
+            line.append(" de ").append(Math.max(expected, pages))
+                .append(String.format(" (%.0f%%)", 100.0 * Math.min(pages, expected) / expected));
+        }
+        line.append(", ").append(rows).append(" filas insertadas");
+        if (pages > 0 && expected > pages) {
+            long remaining = elapsedMillis * (expected - pages) / pages;
+            line.append(", quedan unos ").append(formatMillis(remaining));
+        }
+        return line.toString();
+    }
+
+    private static String formatMillis(long millis) {
+        long seconds = millis / 1000;
+        return String.format("%02d:%02d", seconds / 60, seconds % 60);
+    }
+}
@@ -0,0 +1,171 @@
+package services;
+
+import models.CharacterData;
+import models.EpisodeData;
+import models.LocationData;
+import utils.IngestMetrics;
+import utils.RecordSink;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Carga en tubería: un hilo productor recorre el origen (locations, episodes y characters, en ese orden)
+ * y deja los registros en trozos en una cola acotada; quien consume la tubería los escribe en la BD.
+ * Así la red y la base de datos trabajan a la vez y la escritura empieza con la primera página,
+ * mientras que la cola llena frena al productor y limita la memoria usada.
+ * Las etapas quedan así:
+ * - descarga + decodificación: ApiClient (páginas en paralelo, ventana acotada, decodificación en streaming);
+ * - escritura: el hilo que consume, con su propia conexión y transacción, así que se puede hacer un único commit al final.
+ * El consumidor debe pedir las entidades en el mismo orden: locations, episodes y characters.
+ */
+public class IngestPipeline implements IngestSource, AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 16;
+
+    // Tamaño de página de la API: un trozo equivale a una página
+    private static final int CHUNK_SIZE = 20;
+
+    private enum Entity { LOCATION, EPISODE, CHARACTER }
+
+    /**
+     * Trozo de registros de una entidad, marca de fin de la entidad o error del productor.
+     */
+    private static final class Chunk {
+        final Entity entity;
+        final List<?> records;
+        final Exception error;
+
+        Chunk(Entity entity, List<?> records, Exception error) {
+            this.entity = entity;
+            this.records = records;
+            this.error = error;
+        }
+
+        boolean isEnd() {
+            return records == null && error == null;
+        }
+    }
+
+    private final IngestSource source;
+    private final BlockingQueue<Chunk> queue;
+    private final Thread producer;
+
+    // Trozo en construcción; solo lo usa el hilo productor
+    private List<Object> buffer = new ArrayList<>(CHUNK_SIZE);
+
+    /**
+     * Crea la tubería y arranca el productor.
+     * @param source Origen de los datos (por ejemplo la API)
+     * @param capacity Número máximo de trozos en la cola
+     */
+    public IngestPipeline(IngestSource source, int capacity) {
+        this.source = source;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.producer = new Thread(this::produce, "ingest-producer");
+        this.producer.setDaemon(true);
+        this.producer.start();
+    }
+
+    private void produce() {
+        try {
+            source.locations(record -> offer(Entity.LOCATION, record));
+            endOf(Entity.LOCATION);
+            source.episodes(record -> offer(Entity.EPISODE, record));
+            endOf(Entity.EPISODE);
+            source.characters(record -> offer(Entity.CHARACTER, record));
+            endOf(Entity.CHARACTER);
+        } catch (InterruptedException ex) {
+            // El consumidor ha cerrado la tubería
+        } catch (Exception ex) {
+            try {
+                queue.put(new Chunk(null, null, ex));
+            } catch (InterruptedException ignored) {
+                // El consumidor ya no escucha
+            }
+        }
+    }
+
+    private void offer(Entity entity, Object record) throws InterruptedException {
+        buffer.add(record);
+        if (buffer.size() >= CHUNK_SIZE) {
+            queue.put(new Chunk(entity, buffer, null));
+            buffer = new ArrayList<>(CHUNK_SIZE);
+        }
+    }
+
+    private void endOf(Entity entity) throws InterruptedException {
+        if (!buffer.isEmpty()) {
+            queue.put(new Chunk(entity, buffer, null));
+            buffer = new ArrayList<>(CHUNK_SIZE);
+        }
+        queue.put(new Chunk(entity, null, null));
+    }
+
+    @Override
+    public void locations(RecordSink<? super LocationData> sink) throws IOException, InterruptedException, SQLException {
+        drain(Entity.LOCATION, sink);
+    }
+
+    @Override
+    public void episodes(RecordSink<? super EpisodeData> sink) throws IOException, InterruptedException, SQLException {
+        drain(Entity.EPISODE, sink);
+    }
+
+    @Override
+    public void characters(RecordSink<? super CharacterData> sink) throws IOException, InterruptedException, SQLException {
+        drain(Entity.CHARACTER, sink);
+    }
+
+    /**
+     * Entrega al destino los trozos de una entidad hasta su marca de fin.
+     * Un error del productor se relanza aquí, en el hilo que escribe.
+     * El tiempo esperando a que llegue cada trozo se registra en la etapa "espera cola":
+     * si es alto, el cuello de botella es el origen y no la base de datos.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> void drain(Entity entity, RecordSink<? super T> sink) throws IOException, InterruptedException, SQLException {
+        IngestMetrics.Stage wait = IngestMetrics.current().stage("espera cola");
+        while (true) {
+            long start = System.nanoTime();
+            Chunk chunk = queue.take();
+            wait.add(System.nanoTime() - start, chunk.records != null ? chunk.records.size() : 0);
+            if (chunk.error != null) {
+                if (chunk.error instanceof IOException) {
+                    throw (IOException) chunk.error;
+                }
+                if (chunk.error instanceof SQLException) {
+                    throw (SQLException) chunk.error;
+                }
+                throw new IOException("Error en la descarga: " + chunk.error, chunk.error);
+            }
+            if (chunk.entity != entity) {
+                throw new IllegalStateException("Se esperaba " + entity + " y llegó " + chunk.entity);
+            }
+            if (chunk.isEnd()) {
+                return;
+            }
+            for (Object record : chunk.records) {
+                sink.accept((T) record);
+            }
+        }
+    }
+
+    /**
+     * Detiene el productor si sigue trabajando (por ejemplo tras un error al escribir).
+     */
+    @Override
+    public void close() {
+        producer.interrupt();
+        queue.clear();
+        try {
+            producer.join(5000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
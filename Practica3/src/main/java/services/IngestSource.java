@@ -0,0 +1,22 @@
+package services;
+
+import models.CharacterData;
+import models.EpisodeData;
+import models.LocationData;
+import utils.RecordSink;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * Origen de los datos de una carga: localizaciones, episodios y personajes (con sus episodios).
+ * Cada método recorre su entidad completa entregando los registros al destino.
+ */
+public interface IngestSource {
+
+    void locations(RecordSink<? super LocationData> sink) throws IOException, InterruptedException, SQLException;
+
+    void episodes(RecordSink<? super EpisodeData> sink) throws IOException, InterruptedException, SQLException;
+
+    void characters(RecordSink<? super CharacterData> sink) throws IOException, InterruptedException, SQLException;
+}
@@ -0,0 +1,153 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Comprobación en memoria de la integridad referencial de los datos descargados, antes de escribirlos
+ * en tablas sin claves (ver {@link BulkLoad}). Comprueba lo mismo que comprobarían las claves de la BD:
+ * - ids únicos en location (incluida la "unknown", id 0), episode y character;
+ * - id_origin e id_location de cada personaje existentes en location;
+ * - episodios de cada personaje existentes en episode y sin repetir.
+ * Los ids se ordenan en arrays de int y se buscan con búsqueda binaria, sin conjuntos de objetos.
+ */
+public class IntegrityCheck {
+
+    public static final int DEFAULT_MAX_DETAILS = 50;
+
+    /**
+     * Resultado de la comprobación: número total de infracciones y el detalle de las primeras.
+     */
+    public static final class Report {
+        private final int maxDetails;
+        private final List<String> details = new ArrayList<>();
+        private int violations;
+
+        private Report(int maxDetails) {
+            this.maxDetails = maxDetails;
+        }
+
+        private void add(String detail) {
+            if (violations < maxDetails) {
+                details.add(detail);
+            }
+            violations++;
+        }
+
+        public boolean isValid() {
+            return violations == 0;
+        }
+
+        public int getViolations() {
+            return violations;
+        }
+
+        /** @return Descripción de las primeras infracciones encontradas (como mucho las indicadas al comprobar) */
+        public List<String> getDetails() {
+            return details;
+        }
+
+        /**
+         * Muestra las filas que no cumplen la integridad referencial.
+         */
+        public void print() {
+            if (isValid()) {
+                System.out.println("Integridad referencial correcta.");
+                return;
+            }
+            System.out.println("Se han encontrado " + violations + " errores de integridad referencial:");
+            for (String detail : details) {
+                System.out.println("  " + detail);
+            }
+            if (violations > details.size()) {
+                System.out.println("  ... y " + (violations - details.size()) + " más");
+            }
+        }
+    }
+
+    /**
+     * Comprueba los datos con {@link #DEFAULT_MAX_DETAILS} infracciones detalladas como mucho.
+     * @param staged Datos descargados
+     * @param withUnknown Si la localización "unknown" (id 0) se añade aparte y no viene en los datos
+     * @return Resultado de la comprobación
+     */
+    public static Report validate(StagingBuffer staged, boolean withUnknown) {
+        return validate(staged, withUnknown, DEFAULT_MAX_DETAILS);
+    }
+
+    /**
+     * @param staged Datos descargados
+     * @param withUnknown Si la localización "unknown" (id 0) se añade aparte y no viene en los datos
+     * @param maxDetails Infracciones que se detallan como mucho (se cuentan todas)
+     * @return Resultado de la comprobación
+     */
+    public static Report validate(StagingBuffer staged, boolean withUnknown, int maxDetails) {
+        Report report = new Report(maxDetails);
+        StagingBuffer.Locations locs = staged.getLocations();
+        StagingBuffer.Episodes eps = staged.getEpisodes();
+        StagingBuffer.Characters chars = staged.getCharacters();
+
+        int[] locationIds = new int[locs.size() + (withUnknown ? 1 : 0)];
+        for (int row = 0; row < locs.size(); row++) {
+            locationIds[row] = locs.getId(row);
+        }
+        if (withUnknown) {
+            locationIds[locs.size()] = 0;
+        }
+        int[] episodeIds = new int[eps.size()];
+        for (int row = 0; row < eps.size(); row++) {
+            episodeIds[row] = eps.getId(row);
+        }
+        int[] characterIds = new int[chars.size()];
+        for (int row = 0; row < chars.size(); row++) {
+            characterIds[row] = chars.getId(row);
+        }
+        checkUnique(report, "location", locationIds);
+        checkUnique(report, "episode", episodeIds);
+        checkUnique(report, "character", characterIds);
+
+        int[] seen = new int[16];
+        for (int row = 0; row < chars.size(); row++) {
+            int id = chars.getId(row);
+            if (Arrays.binarySearch(locationIds, chars.getIdOrigin(row)) < 0) {
+                report.add("character " + id + " (" + chars.getName(row) + "): id_origin " + chars.getIdOrigin(row)
+                        + " no existe en location");
+            }
+            if (Arrays.binarySearch(locationIds, chars.getIdLocation(row)) < 0) {
+                report.add("character " + id + " (" + chars.getName(row) + "): id_location " + chars.getIdLocation(row)
+                        + " no existe en location");
+            }
+            int n = chars.getEpisodeCount(row);
+            if (n > seen.length) {
+                seen = new int[Math.max(n, seen.length * 2)];
+            }
+            for (int k = 0; k < n; k++) {
+                int epId = chars.getEpisodeId(row, k);
+                seen[k] = epId;
+                if (Arrays.binarySearch(episodeIds, epId) < 0) {
+                    report.add("character_in_episode (" + id + ", " + epId + "): el episodio no existe en episode");
+                }
+            }
+            Arrays.sort(seen, 0, n);
+            for (int k = 1; k < n; k++) {
+                if (seen[k] == seen[k - 1] && (k == 1 || seen[k - 2] != seen[k])) {
+                    report.add("character_in_episode (" + id + ", " + seen[k] + "): enlace repetido");
+                }
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Ordena los ids y anota cada id que aparece más de una vez (una sola vez por id).
+     */
+    private static void checkUnique(Report report, String table, int[] ids) {
+        Arrays.sort(ids);
+        for (int i = 1; i < ids.length; i++) {
+            if (ids[i] == ids[i - 1] && (i == 1 || ids[i - 2] != ids[i])) {
+                report.add(table + " " + ids[i] + ": id repetido");
+            }
+        }
+    }
+}
@@ -1,15 +1,17 @@
 package services;
 
 import models.Location;
-import models.Character;
+import models.LocationSummary;
 import utils.HibernateUtils;
 import utils.IntValidator;
+import utils.KeysetPager;
 
 import java.util.List;
 import java.util.Scanner;
 
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
+import org.hibernate.StatelessSession;
 import org.hibernate.Transaction;
 import org.hibernate.query.Query;
 
@@ -24,26 +26,37 @@ public class LocationService {
     /**
      * Lista todas las localizaciones registradas en la base de datos,
      * ordenadas por ID, mostrando también su tipo y dimensión.
+     * Se muestran página a página (ver {@link KeysetPager}).
      */
     public static void listarTodasLasLocalizaciones() {
-        try (Session session = HibernateUtils.getSession()) {
-            List<Location> locations = session.createQuery("FROM Location ORDER BY id", Location.class).list();
-            if (locations.isEmpty()) {
+        try {
+            boolean hayLocalizaciones = KeysetPager.browse(scanner, "Listado de localizaciones",
+                    LocationService::obtenerPaginaDeLocalizaciones, LocationSummary::id, LocationService::mostrarResumen);
+            if (!hayLocalizaciones) {
                 System.out.println("No hay localizaciones registradas.");
-                return;
-            }
-
-            System.out.println("\nListado de localizaciones:");
-            for (Location loc : locations) {
-                System.out.println("ID: " + loc.getId() +
-                                   " | Nombre: " + loc.getName() +
-                                   " | Tipo: " + (loc.getType() != null ? loc.getType() : "unknown") +
-                                   " | Dimensión: " + (loc.getDimension() != null ? loc.getDimension() : "unknown"));
             }
         } catch (HibernateException e) {
             System.out.println("Error al listar localizaciones: " + e.getMessage());
         }
     }
+
+    /**
+     * Devuelve una página de localizaciones ordenadas por ID, empezando después del ID indicado
+     * (paginación por clave).
+     * 
+     * @param despuesDeId Solo se devuelven localizaciones con ID mayor que este.
+     * @param tamaño Número máximo de localizaciones de la página.
+     * @return Localizaciones de la página.
+     */
+    public static List<LocationSummary> obtenerPaginaDeLocalizaciones(int despuesDeId, int tamaño) {
+        try (Session session = HibernateUtils.getReadOnlySession()) {
+            return session.createNamedQuery("Location.pagina", LocationSummary.class)
+                    .setParameter("despues", despuesDeId)
+                    .setMaxResults(tamaño)
+                    .setCacheable(true) // se invalida sola al insertar, modificar o borrar localizaciones
+                    .list();
+        }
+    }
     
     /**
      * Busca localizaciones cuyo nombre contenga un texto introducido por el usuario.
@@ -53,23 +66,19 @@ public class LocationService {
         System.out.print("Introduce el texto a buscar: ");
         String texto = scanner.nextLine().trim();
 
-        try (Session session = HibernateUtils.getSession()) {
-            String hql = "FROM Location l WHERE LOWER(l.name) LIKE LOWER(:text) ORDER BY id";
-            Query<Location> query = session.createQuery(hql, Location.class);
+        try (StatelessSession session = HibernateUtils.getStatelessSession()) {
+            String hql = "SELECT new models.LocationSummary(l.id, l.name, l.type, l.dimension) "
+                       + "FROM Location l WHERE LOWER(l.name) LIKE LOWER(:text) ORDER BY l.id";
+            Query<LocationSummary> query = session.createQuery(hql, LocationSummary.class);
             query.setParameter("text", "%" + texto + "%");
 
-            List<Location> resultados = query.list();
+            List<LocationSummary> resultados = query.list();
 
             if (resultados.isEmpty()) {
                 System.out.println("No se encontraron localizaciones con ese texto.");
             } else {
                 System.out.println("\nLocalizaciones encontradas:");
-                for (Location loc : resultados) {
-                	System.out.println("ID: " + loc.getId() +
-                            " | Nombre: " + loc.getName() +
-                            " | Tipo: " + (loc.getType() != null ? loc.getType() : "unknown") +
-                            " | Dimensión: " + (loc.getDimension() != null ? loc.getDimension() : "unknown"));
-                }
+                resultados.forEach(LocationService::mostrarResumen);
             }
         } catch (HibernateException e) {
             System.out.println("Error al buscar localizaciones: " + e.getMessage());
@@ -81,28 +90,36 @@ public class LocationService {
      * ni como origen ni como ubicación actual.
      */
     public static void buscarLocationsSinPersonajes() {
-        try (Session session = HibernateUtils.getSession()) {
+        try (StatelessSession session = HibernateUtils.getStatelessSession()) {
             String hql = """
+                SELECT new models.LocationSummary(l.id, l.name, l.type, l.dimension)
                 FROM Location l WHERE size(l.originCharacters) = 0 AND size(l.locationCharacters) = 0
             """;
-            List<Location> results = session.createQuery(hql, Location.class).list();
+            List<LocationSummary> results = session.createQuery(hql, LocationSummary.class).list();
 
             if (results.isEmpty()) {
                 System.out.println("No hay localizaciones sin personajes asociados.");
             } else {
                 System.out.println("Localizaciones sin personajes:");
-                for (Location loc : results) {
-                	System.out.println("ID: " + loc.getId() +
-                            " | Nombre: " + loc.getName() +
-                            " | Tipo: " + (loc.getType() != null ? loc.getType() : "unknown") +
-                            " | Dimensión: " + (loc.getDimension() != null ? loc.getDimension() : "unknown"));
-                }
+                results.forEach(LocationService::mostrarResumen);
             }
         } catch (HibernateException e) {
             System.out.println("Error al buscar localizaciones sin personajes: " + e.getMessage());
         }
     }
     
+    /**
+     * Muestra en una línea los datos de una localización de un listado o una búsqueda.
+     * 
+     * @param loc Datos de la localización
+     */
+    private static void mostrarResumen(LocationSummary loc) {
+        System.out.println("ID: " + loc.id() +
+                           " | Nombre: " + loc.name() +
+                           " | Tipo: " + (loc.type() != null ? loc.type() : "unknown") +
+                           " | Dimensión: " + (loc.dimension() != null ? loc.dimension() : "unknown"));
+    }
+    
     /**
      * Inserta una nueva localización en la base de datos.
      * El nombre es obligatorio. Si no se introducen tipo o dimensión, se guardará "unknown".
@@ -237,6 +254,8 @@ public class LocationService {
      * Antes de eliminarla, muestra cuántos personajes están asociados como origen o localización actual.
      * Si existen personajes asociados, se eliminan las referencias a esta localización en cada uno de ellos
      * para evitar conflictos de integridad. Luego se solicita confirmación al usuario antes de proceder con el borrado.
+     * Tanto el recuento como la desvinculación se hacen con consultas sobre todos los personajes a la vez,
+     * así que el borrado cuesta las mismas sentencias tenga los personajes que tenga.
      */
     public static void borrarLocation() {
         listarTodasLasLocalizaciones();
@@ -253,7 +272,12 @@ public class LocationService {
                 return;
             }
 
-            int asociados = loc.getOriginCharacters().size() + loc.getLocationCharacters().size();
+            long asociados = session.createQuery(
+                    "SELECT COUNT(c) FROM Character c WHERE c.origin.id = :id", Long.class)
+                    .setParameter("id", id).uniqueResult()
+                + session.createQuery(
+                    "SELECT COUNT(c) FROM Character c WHERE c.location.id = :id", Long.class)
+                    .setParameter("id", id).uniqueResult();
 
             if (asociados > 0) {
                 System.out.println("La localización tiene " + asociados + " personajes asociados.");
@@ -271,16 +295,12 @@ public class LocationService {
             tx = session.beginTransaction();
 
             // Desvincula a los personajes que la usan como origin
-            for (Character c : loc.getOriginCharacters()) {
-                c.setOrigin(null);
-                session.merge(c);
-            }
+            session.createMutationQuery("UPDATE Character c SET c.origin = null WHERE c.origin.id = :id")
+                    .setParameter("id", id).executeUpdate();
 
             // Desvincula a los personajes que la usan como location
-            for (Character c : loc.getLocationCharacters()) {
-                c.setLocation(null);
-                session.merge(c);
-            }
+            session.createMutationQuery("UPDATE Character c SET c.location = null WHERE c.location.id = :id")
+                    .setParameter("id", id).executeUpdate();
 
             session.remove(loc);
             tx.commit();
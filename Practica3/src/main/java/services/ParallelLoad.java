@@ -0,0 +1,309 @@
+package services;
+
+import utils.ApiClient;
+import utils.CopyWriter;
+import utils.DBUtils;
+import utils.IngestMetrics;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Recarga completa con varias conexiones a la vez. Las tablas a la sombra de {@link BlueGreenLoad}
+ * se crean sin claves, así que no dependen unas de otras mientras se cargan:
+ * - location y episode se copian a la vez, cada una desde su conexión;
+ * - character y character_in_episode se reparten en rangos de personajes (por id, en el orden de la API)
+ *   y cada rango lo copia un hilo con su propia conexión.
+ * Cada tarea confirma su parte por separado, pero solo en las sombras, que nadie más lee: si alguna falla
+ * se borran las sombras y las tablas en uso quedan intactas. Después se crean las claves primarias
+ * (también a la vez, una conexión por tabla), las claves ajenas, y se intercambian las tablas en una
+ * transacción corta, así que los lectores pasan de todos los datos antiguos a todos los nuevos.
+ * El tiempo de la carga escala con los núcleos de la BD y el número de conexiones.
+ */
+public class ParallelLoad {
+
+    public static final int DEFAULT_WORKERS = Math.max(2, Math.min(Runtime.getRuntime().availableProcessors(), 8));
+
+    /**
+     * Parte de la carga que se hace en una conexión propia y se confirma al terminar.
+     */
+    private static final class Task {
+        final String name;
+        final Body body;
+
+        Task(String name, Body body) {
+            this.name = name;
+            this.body = body;
+        }
+    }
+
+    private interface Body {
+        /** @return Filas escritas */
+        long run(Connection conn) throws SQLException;
+    }
+
+    /**
+     * Máximo de conexiones para las tareas: las del pool menos la que coordina la carga
+     * y otra que queda libre para el resto de la aplicación (menús, sesiones de Hibernate).
+     * Con más, las tareas esperarían en el pool y podrían agotar su tiempo de espera.
+     * @return Conexiones que se pueden pedir a {@link #run(int)} como mucho
+     */
+    public static int maxWorkers() {
+        return Math.max(1, DBUtils.getPool().getStats().getMaxSize() - 2);
+    }
+
+    /**
+     * Descarga los datos de la API y los carga con el número de conexiones indicado.
+     * @param workers Conexiones (e hilos) que se usan a la vez; se limita a {@link #maxWorkers()}
+     */
+    public static void run(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Hace falta al menos una conexión");
+        }
+        int limit = maxWorkers();
+        if (workers > limit) {
+            System.out.println("El pool solo admite " + limit + " conexiones para la carga; se usan " + limit + ".");
+            workers = limit;
+        }
+        IngestMetrics metrics = IngestMetrics.begin();
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "parallel-load-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        Connection conn = null;
+        try {
+            StagingBuffer staged = new StagingBuffer();
+            try {
+                System.out.println("Descargando datos de la API...");
+                try (IngestMetrics.Timer t = metrics.time("descarga")) {
+                    IngestSource source = new ApiSource();
+                    source.locations(staged.getLocations()::add);
+                    source.episodes(staged.getEpisodes()::add);
+                    source.characters(staged.getCharacters()::add);
+                    t.rows(staged.size());
+                }
+            } catch (IOException | InterruptedException | SQLException ex) {
+                System.out.println("Error al obtener los datos de la API: " + ex.getMessage());
+                return;
+            } finally {
+                ApiClient.getCache().printReport();
+            }
+            staged.printFootprint();
+
+            conn = DBUtils.getConnection();
+            conn.setAutoCommit(false);
+
+            try {
+                metrics.time("preparación", conn, c -> {
+                    BlueGreenLoad.createShadowTables(c);
+                    c.commit();
+                });
+            } catch (SQLException ex) {
+                System.out.println("Error al crear las tablas a la sombra: " + ex.getMessage());
+                conn.rollback();
+                return;
+            }
+
+            try {
+                long copied;
+                try (IngestMetrics.Timer t = metrics.time("carga en paralelo")) {
+                    copied = runAll(pool, copyTasks(staged, workers));
+                    t.rows(copied);
+                }
+                // Las claves se construyen sobre todas las filas copiadas
+                try (IngestMetrics.Timer t = metrics.time("índices")) {
+                    List<Task> keys = new ArrayList<>();
+                    for (String table : BlueGreenLoad.TABLES) {
+                        keys.add(new Task("clave " + table, c -> {
+                            BlueGreenLoad.addPrimaryKey(c, table);
+                            return 0;
+                        }));
+                    }
+                    runAll(pool, keys);
+                    BlueGreenLoad.addForeignKeys(conn);
+                    conn.commit();
+                    t.rows(copied);
+                }
+                System.out.println("Claves e índices de las tablas a la sombra creados");
+            } catch (SQLException | InterruptedException ex) {
+                System.out.println("Error al cargar las tablas a la sombra: " + ex.getMessage());
+                conn.rollback();
+                BlueGreenLoad.dropShadowTables(conn);
+                return;
+            }
+
+            try {
+                metrics.time("intercambio", conn, BlueGreenLoad::swap);
+            } catch (SQLException ex) {
+                System.out.println("Error al intercambiar las tablas: " + ex.getMessage());
+                System.out.println("Las tablas en uso no se han modificado.");
+                BlueGreenLoad.dropShadowTables(conn);
+                return;
+            }
+            System.out.println("Base de datos rellenada correctamente con " + workers + " conexiones.");
+
+        } catch (SQLException ex) {
+            System.out.println("Error con la base de datos: " + ex.getMessage());
+        } finally {
+            pool.shutdownNow();
+            metrics.finish();
+            metrics.printReport();
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException ex) {
+                    System.out.println("Error al cerrar la conexión: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Tareas de copia: location (con "unknown"), episode, y character y character_in_episode
+     * partidas en tantos rangos de personajes como conexiones.
+     */
+    private static List<Task> copyTasks(StagingBuffer staged, int parts) {
+        StagingBuffer.Locations locs = staged.getLocations();
+        StagingBuffer.Episodes eps = staged.getEpisodes();
+        StagingBuffer.Characters chars = staged.getCharacters();
+        List<Task> tasks = new ArrayList<>();
+
+        tasks.add(new Task("location", conn -> {
+            CopyWriter copy = CopyWriter.open(conn, "COPY location_new (" + CopyLoader.LOCATION_COLUMNS + ") FROM STDIN");
+            try {
+                CopyLoader.writeLocation(copy, 0, "unknown", null, null);
+                for (int row = 0; row < locs.size(); row++) {
+                    CopyLoader.writeLocation(copy, locs.getId(row), locs.getName(row), locs.getType(row), locs.getDimension(row));
+                }
+            } catch (SQLException ex) {
+                copy.cancel();
+                throw ex;
+            }
+            return report("location", copy);
+        }));
+
+        tasks.add(new Task("episode", conn -> {
+            CopyWriter copy = CopyWriter.open(conn, "COPY episode_new (" + CopyLoader.EPISODE_COLUMNS + ") FROM STDIN");
+            try {
+                for (int row = 0; row < eps.size(); row++) {
+                    CopyLoader.writeEpisode(copy, eps.getId(row), eps.getName(row), eps.getAirDate(row), eps.getEpisode(row));
+                }
+            } catch (SQLException ex) {
+                copy.cancel();
+                throw ex;
+            }
+            return report("episode", copy);
+        }));
+
+        int n = chars.size();
+        for (int p = 0; p < parts; p++) {
+            int from = (int) ((long) n * p / parts);
+            int to = (int) ((long) n * (p + 1) / parts);
+            if (from == to) {
+                continue;
+            }
+            String range = " [" + chars.getId(from) + ".." + chars.getId(to - 1) + "]";
+            tasks.add(new Task("character" + range, conn -> {
+                CopyWriter copy = CopyWriter.open(conn, "COPY character_new (" + CopyLoader.CHARACTER_COLUMNS + ") FROM STDIN");
+                try {
+                    for (int row = from; row < to; row++) {
+                        CopyLoader.writeCharacter(copy, chars.getId(row), chars.getName(row), chars.getStatus(row),
+                                chars.getSpecies(row), chars.getType(row), chars.getGender(row),
+                                chars.getIdOrigin(row), chars.getIdLocation(row));
+                    }
+                } catch (SQLException ex) {
+                    copy.cancel();
+                    throw ex;
+                }
+                return report("character" + range, copy);
+            }));
+            tasks.add(new Task("character_in_episode" + range, conn -> {
+                CopyWriter copy = CopyWriter.open(conn, "COPY character_in_episode_new (" + CopyLoader.LINK_COLUMNS + ") FROM STDIN");
+                try {
+                    for (int row = from; row < to; row++) {
+                        for (int k = 0; k < chars.getEpisodeCount(row); k++) {
+                            CopyLoader.writeLink(copy, chars.getId(row), chars.getEpisodeId(row, k));
+                        }
+                    }
+                } catch (SQLException ex) {
+                    copy.cancel();
+                    throw ex;
+                }
+                return report("character_in_episode" + range, copy);
+            }));
+        }
+        return tasks;
+    }
+
+    /**
+     * Lanza las tareas en el pool, cada una con su conexión, y espera a que terminen todas.
+     * En cuanto una falla se cancelan las demás y se lanza su error.
+     * @return Filas escritas entre todas las tareas
+     */
+    private static long runAll(ExecutorService pool, List<Task> tasks) throws SQLException, InterruptedException {
+        CompletionService<Long> done = new ExecutorCompletionService<>(pool);
+        List<Future<Long>> futures = new ArrayList<>();
+        for (Task task : tasks) {
+            futures.add(done.submit(() -> runInOwnConnection(task)));
+        }
+        long rows = 0;
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    rows += done.take().get();
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof SQLException) {
+                        throw (SQLException) cause;
+                    }
+                    throw new SQLException("Error en una tarea de carga: " + cause, cause);
+                }
+            }
+        } finally {
+            for (Future<Long> f : futures) {
+                f.cancel(true);
+            }
+        }
+        return rows;
+    }
+
+    private static long runInOwnConnection(Task task) throws SQLException {
+        try (Connection conn = DBUtils.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                long rows = task.body.run(conn);
+                conn.commit();
+                return rows;
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw new SQLException(task.name + ": " + ex.getMessage(), ex.getSQLState(), ex);
+            }
+        }
+    }
+
+    /**
+     * Cierra el COPY, lo registra en la etapa "insert &lt;tabla&gt;" y muestra su rendimiento.
+     */
+    private static long report(String part, CopyWriter copy) throws SQLException {
+        long copied = copy.finish();
+        String table = part.contains(" ") ? part.substring(0, part.indexOf(' ')) : part;
+        IngestMetrics.Stage stage = IngestMetrics.current().stage("insert " + table);
+        stage.add(copy.getSendNanos(), copied);
+        stage.addBytes(copy.getBytes());
+        System.out.printf("COPY %s: %d filas (%s)%n", part, copied, Thread.currentThread().getName());
+        return copied;
+    }
+}
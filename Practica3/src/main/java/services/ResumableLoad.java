@@ -0,0 +1,202 @@
+package services;
+
+import services.DatabaseService.LoadMode;
+import utils.ApiClient;
+import utils.ApiDecoder;
+import utils.DBUtils;
+import utils.IngestMetrics;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Recarga completa reanudable. En lugar de una única transacción, confirma cada N páginas de cada entidad
+ * y en la misma transacción guarda un punto de control en la tabla ingest_checkpoint
+ * (entidad, última página, total de páginas y filas insertadas).
+ * Si la recarga se corta (caída, error de red, página errónea), la siguiente ejecución continúa
+ * desde la página siguiente al último punto de control en lugar de empezar de cero;
+ * como los datos y el punto de control se confirman juntos, nunca se pierde ni se repite una página.
+ * Al terminar se borran los puntos de control, y el resultado es el mismo que el de una recarga normal.
+ */
+public class ResumableLoad {
+
+    public static final int DEFAULT_PAGES_PER_COMMIT = 5;
+
+    private static final String[] ENTITIES = {"location", "episode", "character"};
+
+    /**
+     * Avance guardado de una entidad.
+     */
+    private static final class Checkpoint {
+        int lastPage;
+        int totalPages; // 0 mientras no se conoce
+        int rows;
+
+        boolean isDone() {
+            return totalPages > 0 && lastPage >= totalPages;
+        }
+    }
+
+    /**
+     * Hace (o continúa) la recarga completa confirmando cada pagesPerCommit páginas.
+     * @param mode Modo de escritura en las tablas
+     * @param pagesPerCommit Páginas de cada entidad por transacción
+     */
+    public static void run(LoadMode mode, int pagesPerCommit) {
+        if (pagesPerCommit < 1) {
+            throw new IllegalArgumentException("Hay que confirmar al menos cada página");
+        }
+        IngestMetrics metrics = IngestMetrics.begin();
+        TableLoader loader = (mode == LoadMode.COPY) ? new CopyLoader() : new BatchLoader(DatabaseService.getBatchSize());
+        Connection conn = null;
+        try {
+            conn = DBUtils.getConnection();
+            conn.setAutoCommit(false);
+
+            Map<String, Checkpoint> checkpoints = readCheckpoints(conn);
+            if (checkpoints.isEmpty()) {
+                start(conn);
+                checkpoints = readCheckpoints(conn);
+            } else {
+                System.out.println("Continuando la recarga desde el último punto de control:");
+                for (String entity : ENTITIES) {
+                    Checkpoint cp = checkpoints.get(entity);
+                    System.out.println("  " + entity + ": página " + cp.lastPage
+                            + (cp.totalPages > 0 ? " de " + cp.totalPages : "") + ", " + cp.rows + " filas");
+                }
+            }
+
+            for (String entity : ENTITIES) {
+                Checkpoint cp = checkpoints.get(entity);
+                while (!cp.isDone()) {
+                    try {
+                        loadPages(conn, loader, entity, cp, pagesPerCommit);
+                    } catch (IOException | InterruptedException ex) {
+                        System.out.println("Error al obtener " + entity + " de la API: " + ex.getMessage());
+                        System.out.println("La recarga se puede continuar desde la página " + (cp.lastPage + 1) + ".");
+                        conn.rollback();
+                        return;
+                    } catch (SQLException ex) {
+                        System.out.println("Error al insertar " + entity + ": " + ex.getMessage());
+                        System.out.println("La recarga se puede continuar desde la página " + (cp.lastPage + 1) + ".");
+                        conn.rollback();
+                        return;
+                    }
+                }
+                System.out.println("Filas de " + entity + " añadidas: " + cp.rows);
+            }
+
+            try (Statement st = conn.createStatement()) {
+                st.executeUpdate("DELETE FROM ingest_checkpoint");
+            }
+            conn.commit();
+            System.out.println("Base de datos rellenada correctamente.");
+        } catch (SQLException ex) {
+            System.out.println("Error con la base de datos: " + ex.getMessage());
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ignored) {
+                    // la conexión ya no es utilizable
+                }
+            }
+        } finally {
+            metrics.finish();
+            ApiClient.getCache().printReport();
+            metrics.printReport();
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException ex) {
+                    System.out.println("Error al cerrar la conexión: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Empieza una recarga nueva: vacía las tablas, añade "unknown" y crea los puntos de control a 0.
+     */
+    private static void start(Connection conn) throws SQLException {
+        System.out.println("Vaciando la base de datos...");
+        DatabaseService.clearDatabase(conn);
+        DatabaseService.createUnknownLocation(conn);
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO ingest_checkpoint (entity, last_page) VALUES (?, 0)")) {
+            for (String entity : ENTITIES) {
+                ps.setString(1, entity);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        conn.commit();
+    }
+
+    /**
+     * Descarga e inserta el siguiente grupo de páginas de la entidad y confirma los datos junto con el punto de control.
+     */
+    private static void loadPages(Connection conn, TableLoader loader, String entity, Checkpoint cp, int pagesPerCommit)
+            throws IOException, InterruptedException, SQLException {
+        int from = cp.lastPage + 1;
+        int to = from + pagesPerCommit - 1;
+        int[] totalPages = {0};
+        int inserted;
+        try (IngestMetrics.Timer t = IngestMetrics.current().time("carga " + entity)) {
+            switch (entity) {
+                case "location":
+                    inserted = loader.loadLocations(conn, sink ->
+                            totalPages[0] = ApiClient.fetchPages(entity, from, to, ApiDecoder::readLocation, sink));
+                    break;
+                case "episode":
+                    inserted = loader.loadEpisodes(conn, sink ->
+                            totalPages[0] = ApiClient.fetchPages(entity, from, to, ApiDecoder::readEpisode, sink));
+                    break;
+                default:
+                    inserted = loader.loadCharacters(conn, sink ->
+                            totalPages[0] = ApiClient.fetchPages(entity, from, to, ApiDecoder::readCharacter, sink));
+            }
+            t.rows(inserted);
+        }
+
+        int lastPage = Math.min(to, totalPages[0]);
+        try (PreparedStatement ps = conn.prepareStatement(
+                "UPDATE ingest_checkpoint SET last_page = ?, total_pages = ?, rows_loaded = rows_loaded + ?, updated_at = now() "
+                + "WHERE entity = ?")) {
+            ps.setInt(1, lastPage);
+            ps.setInt(2, totalPages[0]);
+            ps.setInt(3, inserted);
+            ps.setString(4, entity);
+            ps.executeUpdate();
+        }
+        IngestMetrics.current().time("commit", conn, Connection::commit);
+        // Solo se avanza en memoria cuando el commit ha ido bien
+        cp.lastPage = lastPage;
+        cp.totalPages = totalPages[0];
+        cp.rows += inserted;
+        System.out.println("Punto de control: " + entity + " página " + cp.lastPage + " de " + cp.totalPages);
+    }
+
+    private static Map<String, Checkpoint> readCheckpoints(Connection conn) throws SQLException {
+        Map<String, Checkpoint> result = new HashMap<>();
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT entity, last_page, total_pages, rows_loaded FROM ingest_checkpoint")) {
+            while (rs.next()) {
+                Checkpoint cp = new Checkpoint();
+                cp.lastPage = rs.getInt(2);
+                cp.totalPages = rs.getInt(3);
+                cp.rows = rs.getInt(4);
+                result.put(rs.getString(1), cp);
+            }
+        }
+        if (!result.isEmpty() && result.size() != ENTITIES.length) {
+            throw new SQLException("La tabla ingest_checkpoint está incompleta; vacíala para empezar de cero");
+        }
+        return result;
+    }
+}
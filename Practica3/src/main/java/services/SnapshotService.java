@@ -0,0 +1,224 @@
+package services;
+
+import services.DatabaseService.LoadMode;
+import utils.DBUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * Exportación e importación de una instantánea de la base de datos en un fichero local,
+ * para poblar bases de datos de pruebas sin depender de la API.
+ * Formato (binario, big-endian):
+ * - Cabecera: MAGIC (int) y VERSION (short).
+ * - Tres secciones en orden (location, episode, character), cada una con su etiqueta (byte) y su número de filas (int).
+ * - Cadenas: longitud en bytes (int, -1 si es NULL) y los bytes en UTF-8.
+ * - Fechas: día desde 1970-01-01 (int, NO_DATE si es NULL).
+ * - Cada personaje lleva detrás sus episodios: número (int) y los ids (int), así que character_in_episode va incluida.
+ */
+public class SnapshotService {
+
+    public static final String DEFAULT_FILE = "rickandmorty.snap";
+
+    static final int MAGIC = 0x524D534E; // "RMSN"
+    static final short VERSION = 1;
+    static final byte LOCATIONS = 'L';
+    static final byte EPISODES = 'E';
+    static final byte CHARACTERS = 'C';
+    static final int NO_DATE = Integer.MIN_VALUE;
+
+    private static final int FETCH_SIZE = 1000;
+
+    /**
+     * Escribe el contenido actual de location, episode, character y character_in_episode en un fichero.
+     * Se lee todo en una transacción REPEATABLE READ de solo lectura, así que la instantánea es coherente
+     * aunque otro proceso esté escribiendo. El fichero se escribe en un temporal y se renombra al terminar.
+     * @param file Ruta del fichero
+     */
+    public static void exportSnapshot(String file) {
+        Path path = Paths.get(file).toAbsolutePath();
+        Path tmp = null;
+        Connection conn = null;
+        long start = System.nanoTime();
+        try {
+            conn = DBUtils.getConnection();
+            conn.setAutoCommit(false);
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            conn.setReadOnly(true);
+
+            tmp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+            int locations, episodes, characters;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                locations = writeLocations(conn, out);
+                episodes = writeEpisodes(conn, out);
+                characters = writeCharacters(conn, out);
+            }
+            conn.commit();
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Instantánea guardada en %s: %d localizaciones, %d episodios, %d personajes (%d bytes, %.2f s)%n",
+                    path, locations, episodes, characters, Files.size(path), seconds);
+        } catch (IOException ex) {
+            System.out.println("Error al escribir la instantánea: " + ex.getMessage());
+        } catch (SQLException ex) {
+            System.out.println("Error al leer la base de datos: " + ex.getMessage());
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ex) {
+                    System.out.println("No se pudo borrar el fichero temporal: " + ex.getMessage());
+                }
+            }
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                    conn.setReadOnly(false);
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException ex) {
+                    System.out.println("Error al cerrar la conexión: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Rellena la base de datos desde un fichero de instantánea en lugar de la API.
+     * @param file Ruta del fichero generado con {@link #exportSnapshot(String)}
+     * @param mode Modo de escritura en las tablas
+     */
+    public static void importSnapshot(String file, LoadMode mode) {
+        SnapshotSource source;
+        try {
+            source = new SnapshotSource(Paths.get(file));
+        } catch (IOException ex) {
+            System.out.println("Error al abrir la instantánea: " + ex.getMessage());
+            return;
+        }
+        DatabaseService.fillDatabase(mode, source);
+    }
+
+    private static int writeLocations(Connection conn, DataOutputStream out) throws SQLException, IOException {
+        out.writeByte(LOCATIONS);
+        out.writeInt(count(conn, "location"));
+        int rows = 0;
+        try (Statement st = conn.createStatement()) {
+            st.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = st.executeQuery("SELECT id, name, type, dimension FROM location ORDER BY id")) {
+                while (rs.next()) {
+                    out.writeInt(rs.getInt(1));
+                    writeString(out, rs.getString(2));
+                    writeString(out, rs.getString(3));
+                    writeString(out, rs.getString(4));
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static int writeEpisodes(Connection conn, DataOutputStream out) throws SQLException, IOException {
+        out.writeByte(EPISODES);
+        out.writeInt(count(conn, "episode"));
+        int rows = 0;
+        try (Statement st = conn.createStatement()) {
+            st.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = st.executeQuery("SELECT id, name, air_date, episode FROM episode ORDER BY id")) {
+                while (rs.next()) {
+                    out.writeInt(rs.getInt(1));
+                    writeString(out, rs.getString(2));
+                    Date airDate = rs.getDate(3);
+                    out.writeInt(airDate != null ? (int) airDate.toLocalDate().toEpochDay() : NO_DATE);
+                    writeString(out, rs.getString(4));
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Escribe los personajes y, tras cada uno, sus episodios. Las dos consultas van ordenadas por personaje
+     * y se recorren a la vez (como un merge join), así que no hace falta tener las relaciones en memoria.
+     */
+    private static int writeCharacters(Connection conn, DataOutputStream out) throws SQLException, IOException {
+        out.writeByte(CHARACTERS);
+        out.writeInt(count(conn, "character"));
+        int rows = 0;
+        try (Statement st = conn.createStatement();
+             Statement linkSt = conn.createStatement()) {
+            st.setFetchSize(FETCH_SIZE);
+            linkSt.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = st.executeQuery(
+                         "SELECT id, name, status, species, type, gender, id_origin, id_location FROM character ORDER BY id");
+                 ResultSet links = linkSt.executeQuery(
+                         "SELECT id_character, id_episode FROM character_in_episode ORDER BY id_character, id_episode")) {
+                boolean hasLink = links.next();
+                int[] episodeIds = new int[64];
+                while (rs.next()) {
+                    int id = rs.getInt(1);
+                    out.writeInt(id);
+                    for (int col = 2; col <= 6; col++) {
+                        writeString(out, rs.getString(col));
+                    }
+                    out.writeInt(rs.getInt(7));
+                    out.writeInt(rs.getInt(8));
+
+                    // Enlaces de personajes que ya no existen no pueden darse (clave ajena), pero se saltan por si acaso
+                    while (hasLink && links.getInt(1) < id) {
+                        hasLink = links.next();
+                    }
+                    int n = 0;
+                    while (hasLink && links.getInt(1) == id) {
+                        if (n == episodeIds.length) {
+                            episodeIds = Arrays.copyOf(episodeIds, n * 2);
+                        }
+                        episodeIds[n++] = links.getInt(2);
+                        hasLink = links.next();
+                    }
+                    out.writeInt(n);
+                    for (int i = 0; i < n; i++) {
+                        out.writeInt(episodeIds[i]);
+                    }
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static int count(Connection conn, String table) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT count(*) FROM " + table)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,140 @@
+package services;
+
+import models.CharacterData;
+import models.EpisodeData;
+import models.LocationData;
+import utils.RecordSink;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * Origen de datos que lee una instantánea generada por {@link SnapshotService}.
+ * El fichero se proyecta en memoria (FileChannel.map) y los registros se decodifican
+ * directamente del buffer según se piden, sin copias intermedias ni lecturas bloque a bloque.
+ * Las secciones se deben recorrer en el orden del fichero: locations, episodes y characters.
+ */
+public class SnapshotSource implements IngestSource {
+
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Proyecta el fichero en memoria y comprueba su cabecera.
+     * @param file Ruta de la instantánea
+     * @throws IOException si no se puede leer o no es una instantánea válida
+     */
+    public SnapshotSource(Path file) throws IOException {
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("La instantánea " + file + " es demasiado grande");
+            }
+            // La proyección sigue siendo válida después de cerrar el canal
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (buffer.getInt() != SnapshotService.MAGIC) {
+                throw new IOException(file + " no es una instantánea");
+            }
+            short version = buffer.getShort();
+            if (version != SnapshotService.VERSION) {
+                throw new IOException("Versión de instantánea no soportada: " + version);
+            }
+        } catch (BufferUnderflowException ex) {
+            throw new IOException(file + " no es una instantánea", ex);
+        }
+    }
+
+    @Override
+    public void locations(RecordSink<? super LocationData> sink) throws IOException, InterruptedException, SQLException {
+        int rows = section(SnapshotService.LOCATIONS);
+        try {
+            for (int i = 0; i < rows; i++) {
+                sink.accept(new LocationData(buffer.getInt(), readString(), readString(), readString()));
+            }
+        } catch (BufferUnderflowException ex) {
+            throw truncated(ex);
+        }
+    }
+
+    @Override
+    public void episodes(RecordSink<? super EpisodeData> sink) throws IOException, InterruptedException, SQLException {
+        int rows = section(SnapshotService.EPISODES);
+        try {
+            for (int i = 0; i < rows; i++) {
+                int id = buffer.getInt();
+                String name = readString();
+                int epochDay = buffer.getInt();
+                Date airDate = epochDay != SnapshotService.NO_DATE ? Date.valueOf(LocalDate.ofEpochDay(epochDay)) : null;
+                sink.accept(new EpisodeData(id, name, airDate, readString()));
+            }
+        } catch (BufferUnderflowException ex) {
+            throw truncated(ex);
+        }
+    }
+
+    @Override
+    public void characters(RecordSink<? super CharacterData> sink) throws IOException, InterruptedException, SQLException {
+        int rows = section(SnapshotService.CHARACTERS);
+        try {
+            for (int i = 0; i < rows; i++) {
+                int id = buffer.getInt();
+                String name = readString();
+                String status = readString();
+                String species = readString();
+                String type = readString();
+                String gender = readString();
+                int origin = buffer.getInt();
+                int location = buffer.getInt();
+                int n = buffer.getInt();
+                int[] episodeIds = new int[n];
+                buffer.asIntBuffer().get(episodeIds);
+                buffer.position(buffer.position() + 4 * n);
+                sink.accept(new CharacterData(id, name, status, species, type, gender, origin, location, episodeIds));
+            }
+        } catch (BufferUnderflowException ex) {
+            throw truncated(ex);
+        }
+    }
+
+    /**
+     * Lee la etiqueta y el número de filas de la siguiente sección.
+     */
+    private int section(byte tag) throws IOException {
+        try {
+            byte found = buffer.get();
+            if (found != tag) {
+                throw new IOException("Se esperaba la sección '" + (char) tag + "' y hay '" + (char) found + "' en " + file);
+            }
+            return buffer.getInt();
+        } catch (BufferUnderflowException ex) {
+            throw truncated(ex);
+        }
+    }
+
+    private String readString() {
+        int len = buffer.getInt();
+        if (len < 0) {
+            return null;
+        }
+        if (len > scratch.length) {
+            scratch = new byte[Math.max(len, scratch.length * 2)];
+        }
+        buffer.get(scratch, 0, len);
+        return new String(scratch, 0, len, StandardCharsets.UTF_8);
+    }
+
+    private IOException truncated(BufferUnderflowException ex) {
+        return new IOException("La instantánea " + file + " está incompleta", ex);
+    }
+}
@@ -0,0 +1,346 @@
+package services;
+
+import models.CharacterData;
+import models.EpisodeData;
+import models.LocationData;
+import utils.RecordSink;
+import utils.StringDictionary;
+
+import java.io.IOException;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Almacén por columnas de los datos descargados mientras se preparan para escribirlos en la BD.
+ * En lugar de un objeto *Data por fila:
+ * - ids, claves ajenas y fechas van en columnas de int;
+ * - los episodios de cada personaje van seguidos en un único int[] con un array de desplazamientos (formato CSR);
+ * - las columnas con pocos valores distintos (status, species, type, gender, tipo y dimensión de la localización)
+ *   guardan un código por fila y cada valor distinto una sola vez ({@link StringDictionary}).
+ * Se puede recorrer como un {@link IngestSource}, así que los loaders leen directamente de aquí.
+ */
+public class StagingBuffer implements IngestSource {
+
+    private static final int NO_DATE = Integer.MIN_VALUE;
+
+    private final Locations locations = new Locations();
+    private final Episodes episodes = new Episodes();
+    private final Characters characters = new Characters();
+
+    public Locations getLocations() {
+        return locations;
+    }
+
+    public Episodes getEpisodes() {
+        return episodes;
+    }
+
+    public Characters getCharacters() {
+        return characters;
+    }
+
+    @Override
+    public void locations(RecordSink<? super LocationData> sink) throws IOException, InterruptedException, SQLException {
+        for (int row = 0; row < locations.size(); row++) {
+            sink.accept(locations.toData(row));
+        }
+    }
+
+    @Override
+    public void episodes(RecordSink<? super EpisodeData> sink) throws IOException, InterruptedException, SQLException {
+        for (int row = 0; row < episodes.size(); row++) {
+            sink.accept(episodes.toData(row));
+        }
+    }
+
+    @Override
+    public void characters(RecordSink<? super CharacterData> sink) throws IOException, InterruptedException, SQLException {
+        for (int row = 0; row < characters.size(); row++) {
+            sink.accept(characters.toData(row));
+        }
+    }
+
+    /** @return Registros guardados: localizaciones, episodios y personajes */
+    public int size() {
+        return locations.size() + episodes.size() + characters.size();
+    }
+
+    /** @return Memoria aproximada ocupada por todas las columnas, en bytes */
+    public long footprintBytes() {
+        return locations.footprintBytes() + episodes.footprintBytes() + characters.footprintBytes();
+    }
+
+    /**
+     * Muestra cuántas filas hay de cada tabla y cuánta memoria ocupan.
+     */
+    public void printFootprint() {
+        System.out.printf("Datos en memoria (por columnas): location %d filas %.1f KiB, episode %d filas %.1f KiB, "
+                        + "character %d filas y %d episodios %.1f KiB; total %.1f KiB%n",
+                locations.size(), locations.footprintBytes() / 1024.0,
+                episodes.size(), episodes.footprintBytes() / 1024.0,
+                characters.size(), characters.episodeIds.size, characters.footprintBytes() / 1024.0,
+                footprintBytes() / 1024.0);
+    }
+
+    /**
+     * Localizaciones: id, nombre, y tipo y dimensión codificados con diccionario.
+     */
+    public static final class Locations {
+        private final IntColumn ids = new IntColumn();
+        private final StringColumn names = new StringColumn();
+        private final StringDictionary typeDict = new StringDictionary();
+        private final IntColumn types = new IntColumn();
+        private final StringDictionary dimensionDict = new StringDictionary();
+        private final IntColumn dimensions = new IntColumn();
+
+        public void add(LocationData loc) {
+            ids.add(loc.getId());
+            names.add(loc.getName());
+            types.add(typeDict.encode(loc.getType()));
+            dimensions.add(dimensionDict.encode(loc.getDimension()));
+        }
+
+        public int size() {
+            return ids.size;
+        }
+
+        public int getId(int row) {
+            return ids.get(row);
+        }
+
+        public String getName(int row) {
+            return names.get(row);
+        }
+
+        public String getType(int row) {
+            return typeDict.decode(types.get(row));
+        }
+
+        public String getDimension(int row) {
+            return dimensionDict.decode(dimensions.get(row));
+        }
+
+        /** @return La fila como LocationData (objeto nuevo, las cadenas se comparten) */
+        public LocationData toData(int row) {
+            return new LocationData(getId(row), getName(row), getType(row), getDimension(row));
+        }
+
+        long footprintBytes() {
+            return ids.footprintBytes() + names.footprintBytes() + types.footprintBytes() + dimensions.footprintBytes()
+                    + typeDict.footprintBytes() + dimensionDict.footprintBytes();
+        }
+    }
+
+    /**
+     * Episodios: id, nombre, fecha de emisión como día desde 1970-01-01 y código.
+     */
+    public static final class Episodes {
+        private final IntColumn ids = new IntColumn();
+        private final StringColumn names = new StringColumn();
+        private final IntColumn airDates = new IntColumn();
+        private final StringColumn codes = new StringColumn();
+
+        public void add(EpisodeData ep) {
+            ids.add(ep.getId());
+            names.add(ep.getName());
+            airDates.add(ep.getAir_date() != null ? (int) ep.getAir_date().toLocalDate().toEpochDay() : NO_DATE);
+            codes.add(ep.getEpisode());
+        }
+
+        public int size() {
+            return ids.size;
+        }
+
+        public int getId(int row) {
+            return ids.get(row);
+        }
+
+        public String getName(int row) {
+            return names.get(row);
+        }
+
+        public Date getAirDate(int row) {
+            int day = airDates.get(row);
+            return day == NO_DATE ? null : Date.valueOf(LocalDate.ofEpochDay(day));
+        }
+
+        public String getEpisode(int row) {
+            return codes.get(row);
+        }
+
+        /** @return La fila como EpisodeData (objeto nuevo) */
+        public EpisodeData toData(int row) {
+            return new EpisodeData(getId(row), getName(row), getAirDate(row), getEpisode(row));
+        }
+
+        long footprintBytes() {
+            return ids.footprintBytes() + names.footprintBytes() + airDates.footprintBytes() + codes.footprintBytes();
+        }
+    }
+
+    /**
+     * Personajes: columnas de int para id, origen y ubicación, diccionarios para status, species, type y gender,
+     * y los ids de episodio de todos los personajes seguidos en un array, con episodeOffsets[fila] como inicio
+     * de los de cada fila y episodeOffsets[fila + 1] como final.
+     */
+    public static final class Characters {
+        private final IntColumn ids = new IntColumn();
+        private final StringColumn names = new StringColumn();
+        private final StringDictionary statusDict = new StringDictionary();
+        private final IntColumn statuses = new IntColumn();
+        private final StringDictionary speciesDict = new StringDictionary();
+        private final IntColumn species = new IntColumn();
+        private final StringDictionary typeDict = new StringDictionary();
+        private final IntColumn types = new IntColumn();
+        private final StringDictionary genderDict = new StringDictionary();
+        private final IntColumn genders = new IntColumn();
+        private final IntColumn origins = new IntColumn();
+        private final IntColumn locations = new IntColumn();
+        private final IntColumn episodeOffsets = new IntColumn();
+        private final IntColumn episodeIds = new IntColumn();
+
+        Characters() {
+            episodeOffsets.add(0);
+        }
+
+        public void add(CharacterData ch) {
+            ids.add(ch.getId());
+            names.add(ch.getName());
+            statuses.add(statusDict.encode(ch.getStatus()));
+            species.add(speciesDict.encode(ch.getSpecies()));
+            types.add(typeDict.encode(ch.getType()));
+            genders.add(genderDict.encode(ch.getGender()));
+            origins.add(ch.getId_origin());
+            locations.add(ch.getId_location());
+            for (int epId : ch.getEpisodeIds()) {
+                episodeIds.add(epId);
+            }
+            episodeOffsets.add(episodeIds.size);
+        }
+
+        public int size() {
+            return ids.size;
+        }
+
+        public int getId(int row) {
+            return ids.get(row);
+        }
+
+        public String getName(int row) {
+            return names.get(row);
+        }
+
+        public String getStatus(int row) {
+            return statusDict.decode(statuses.get(row));
+        }
+
+        public String getSpecies(int row) {
+            return speciesDict.decode(species.get(row));
+        }
+
+        public String getType(int row) {
+            return typeDict.decode(types.get(row));
+        }
+
+        public String getGender(int row) {
+            return genderDict.decode(genders.get(row));
+        }
+
+        public int getIdOrigin(int row) {
+            return origins.get(row);
+        }
+
+        public int getIdLocation(int row) {
+            return locations.get(row);
+        }
+
+        /** @return Número de episodios del personaje de la fila */
+        public int getEpisodeCount(int row) {
+            return episodeOffsets.get(row + 1) - episodeOffsets.get(row);
+        }
+
+        /**
+         * @param row Fila del personaje
+         * @param k Posición del episodio dentro de los del personaje (de 0 a getEpisodeCount(row) - 1)
+         * @return Id del episodio
+         */
+        public int getEpisodeId(int row, int k) {
+            return episodeIds.get(episodeOffsets.get(row) + k);
+        }
+
+        /** @return La fila como CharacterData (objeto nuevo con su propia copia de los episodios) */
+        public CharacterData toData(int row) {
+            int from = episodeOffsets.get(row);
+            int[] eps = Arrays.copyOfRange(episodeIds.data, from, episodeOffsets.get(row + 1));
+            return new CharacterData(getId(row), getName(row), getStatus(row), getSpecies(row), getType(row),
+                    getGender(row), getIdOrigin(row), getIdLocation(row), eps);
+        }
+
+        long footprintBytes() {
+            return ids.footprintBytes() + names.footprintBytes()
+                    + statuses.footprintBytes() + species.footprintBytes() + types.footprintBytes() + genders.footprintBytes()
+                    + origins.footprintBytes() + locations.footprintBytes()
+                    + episodeOffsets.footprintBytes() + episodeIds.footprintBytes()
+                    + statusDict.footprintBytes() + speciesDict.footprintBytes()
+                    + typeDict.footprintBytes() + genderDict.footprintBytes();
+        }
+    }
+
+    /**
+     * Columna de int que crece duplicando su capacidad.
+     */
+    private static final class IntColumn {
+        private int[] data = new int[64];
+        private int size;
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        int get(int row) {
+            if (row >= size) {
+                throw new IndexOutOfBoundsException("Fila " + row + " fuera de rango (" + size + ")");
+            }
+            return data[row];
+        }
+
+        long footprintBytes() {
+            return 16 + 4L * data.length;
+        }
+    }
+
+    /**
+     * Columna de cadenas de muchos valores distintos (nombres, códigos de episodio).
+     */
+    private static final class StringColumn {
+        private String[] data = new String[64];
+        private int size;
+
+        void add(String value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        String get(int row) {
+            if (row >= size) {
+                throw new IndexOutOfBoundsException("Fila " + row + " fuera de rango (" + size + ")");
+            }
+            return data[row];
+        }
+
+        long footprintBytes() {
+            long bytes = 16 + 4L * data.length;
+            for (int i = 0; i < size; i++) {
+                bytes += StringDictionary.stringBytes(data[i]);
+            }
+            return bytes;
+        }
+    }
+}
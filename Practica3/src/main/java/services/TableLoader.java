@@ -0,0 +1,27 @@
+package services;
+
+import models.CharacterData;
+import models.EpisodeData;
+import models.LocationData;
+import utils.RecordSource;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Estrategia de escritura de los datos de la API en las tablas de la base de datos.
+ * Cada método consume su origen completo y devuelve cuántas filas se insertaron realmente
+ * (las que ya existían no cuentan). No hace commit: la transacción es de quien llama.
+ */
+public interface TableLoader {
+
+    int loadLocations(Connection conn, RecordSource<LocationData> source) throws SQLException, IOException, InterruptedException;
+
+    int loadEpisodes(Connection conn, RecordSource<EpisodeData> source) throws SQLException, IOException, InterruptedException;
+
+    /**
+     * Carga los personajes y sus relaciones en character_in_episode.
+     */
+    int loadCharacters(Connection conn, RecordSource<CharacterData> source) throws SQLException, IOException, InterruptedException;
+}
@@ -0,0 +1,543 @@
+package utils;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+/**
+ * Cliente HTTP de la API de Rick and Morty.
+ * Reutiliza un único HttpClient para todas las peticiones y descarga las páginas
+ * de un recurso en paralelo, entregando siempre los registros en orden de página.
+ * Las respuestas se leen en streaming con un JsonReader sobre el InputStream del cuerpo,
+ * sin pasar por un String ni por un árbol JsonObject.
+ * Las peticiones pasan por una caché en disco ({@link HttpCache}) y piden el cuerpo comprimido con gzip.
+ */
+public class ApiClient {
+
+    public static final String BASE_URL = "https://rickandmortyapi.com/api/";
+
+    /** Ids por petición en los endpoints de varios ids, para no pasarse de longitud de URL */
+    public static final int IDS_PER_REQUEST = 100;
+
+    private static final int DEFAULT_CONCURRENCY = 4;
+
+    private static final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private static final HttpCache cache = HttpCache.fromSystemProperties();
+
+    private static volatile int concurrency = DEFAULT_CONCURRENCY;
+    private static volatile boolean cacheEnabled = true;
+    private static volatile String baseUrl = BASE_URL;
+    private static volatile RequestScheduler scheduler = new RequestScheduler();
+
+    /**
+     * Lee un registro de la posición actual de un JsonReader (ver {@link ApiDecoder}).
+     */
+    @FunctionalInterface
+    public interface RecordReader<T> {
+        T read(JsonReader in) throws IOException;
+    }
+
+    /**
+     * Fija el número máximo de páginas que se descargan a la vez.
+     * @param maxConcurrency Número de descargas simultáneas (mínimo 1)
+     */
+    public static void setConcurrency(int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("La concurrencia debe ser al menos 1");
+        }
+        concurrency = maxConcurrency;
+    }
+
+    public static int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Cambia la URL base de la API, por ejemplo para apuntar a un servidor local de pruebas.
+     * @param url URL terminada en "/" (por defecto {@link #BASE_URL})
+     */
+    public static void setBaseUrl(String url) {
+        if (!url.endsWith("/")) {
+            throw new IllegalArgumentException("La URL base debe terminar en /");
+        }
+        baseUrl = url;
+    }
+
+    /**
+     * Sustituye el planificador de peticiones (ritmo, peticiones en curso y reintentos).
+     * @param requestScheduler Planificador a usar a partir de ahora
+     */
+    public static void setScheduler(RequestScheduler requestScheduler) {
+        scheduler = requestScheduler;
+    }
+
+    /**
+     * Activa o desactiva la caché en disco de las respuestas (activada por defecto).
+     * @param enabled false para descargar siempre todas las páginas
+     */
+    public static void setCacheEnabled(boolean enabled) {
+        cacheEnabled = enabled;
+    }
+
+    /**
+     * @return Caché de respuestas, para consultar o mostrar sus estadísticas
+     */
+    public static HttpCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Descarga todas las páginas de un recurso paginado de la API (location, episode, character)
+     * y entrega cada registro al destino indicado, en orden de página.
+     * - La página 1 se decodifica directamente sobre el destino y de ella se lee "info.pages".
+     * - El resto se descargan en paralelo, con como mucho {@link #getConcurrency()} peticiones a la vez;
+     *   cada hilo decodifica su página a una lista del tamaño de la página.
+     * - El destino siempre se invoca desde el hilo que llama a este método.
+     * Si una sola página falla, se cancelan las pendientes y se lanza la excepción.
+     * @param resource Nombre del recurso (por ejemplo "location")
+     * @param reader Lector de cada registro del array "results"
+     * @param sink Destino de los registros (normalmente la inserción en la BD)
+     * @return Número de registros entregados
+     * @throws IOException si falla la descarga o el contenido de alguna página
+     * @throws InterruptedException si la espera es interrumpida
+     * @throws SQLException si el destino falla al procesar un registro
+     */
+    public static <T> int fetchAllPages(String resource, RecordReader<T> reader, RecordSink<? super T> sink)
+            throws IOException, InterruptedException, SQLException {
+        int[] count = {0};
+        int pages = readPage(resource, 1, reader, record -> {
+            sink.accept(record);
+            count[0]++;
+        });
+        if (pages < 0) {
+            throw new IOException("La página 1 de " + resource + " no indica el número de páginas");
+        }
+        IngestMetrics.current().stage("http " + resource).addExpected(pages);
+        count[0] += fetchOrdered(resource, pages - 1, i -> "la página " + (i + 2), i -> {
+            List<T> records = new ArrayList<>();
+            readPage(resource, i + 2, reader, records::add);
+            return records;
+        }, sink);
+        return count[0];
+    }
+
+    /**
+     * Descarga un rango de páginas de un recurso paginado y entrega sus registros en orden de página,
+     * igual que {@link #fetchAllPages} pero empezando y terminando donde se indique.
+     * La primera página del rango se decodifica sobre el destino y de ella se lee "info.pages";
+     * el resto del rango (sin pasar de la última página) se descarga en paralelo.
+     * @param resource Nombre del recurso (por ejemplo "location")
+     * @param fromPage Primera página (desde 1)
+     * @param toPage Última página, incluida (se recorta al número de páginas del recurso)
+     * @param reader Lector de cada registro del array "results"
+     * @param sink Destino de los registros
+     * @return Número total de páginas del recurso
+     * @throws IOException si falla la descarga o el contenido de alguna página
+     * @throws InterruptedException si la espera es interrumpida
+     * @throws SQLException si el destino falla al procesar un registro
+     */
+    public static <T> int fetchPages(String resource, int fromPage, int toPage, RecordReader<T> reader, RecordSink<? super T> sink)
+            throws IOException, InterruptedException, SQLException {
+        if (fromPage < 1 || toPage < fromPage) {
+            throw new IllegalArgumentException("Rango de páginas no válido: " + fromPage + "-" + toPage);
+        }
+        int pages = readPage(resource, fromPage, reader, sink);
+        if (pages < 0) {
+            throw new IOException("La página " + fromPage + " de " + resource + " no indica el número de páginas");
+        }
+        int last = Math.min(toPage, pages);
+        IngestMetrics.current().stage("http " + resource).addExpected(last - fromPage + 1);
+        fetchOrdered(resource, last - fromPage, i -> "la página " + (fromPage + 1 + i), i -> {
+            List<T> records = new ArrayList<>();
+            readPage(resource, fromPage + 1 + i, reader, records::add);
+            return records;
+        }, sink);
+        return pages;
+    }
+
+    /**
+     * Descarga los registros con los ids indicados usando los endpoints de varios ids
+     * (por ejemplo "character/1,2,3"), en bloques de como mucho {@link #IDS_PER_REQUEST} ids.
+     * Los bloques se descargan en paralelo como las páginas de {@link #fetchAllPages}
+     * y los registros se entregan en orden de id. Los ids que no existen en la API simplemente no aparecen:
+     * los ids se piden siempre en forma de array ("character/[1,2,3]"), también cuando el bloque tiene uno solo,
+     * para que la API responda una lista (vacía si no existe) y no el registro suelto o un 404.
+     * El coste depende del número de ids pedidos, no del tamaño del recurso.
+     * @param resource Nombre del recurso (por ejemplo "character")
+     * @param ids Ids a descargar (se ignoran repetidos)
+     * @param reader Lector de cada registro
+     * @param sink Destino de los registros
+     * @return Número de registros entregados
+     * @throws IOException si falla la descarga o el contenido de algún bloque
+     * @throws InterruptedException si la espera es interrumpida
+     * @throws SQLException si el destino falla al procesar un registro
+     */
+    public static <T> int fetchByIds(String resource, Collection<Integer> ids, RecordReader<T> reader, RecordSink<? super T> sink)
+            throws IOException, InterruptedException, SQLException {
+        int[] sorted = ids.stream().mapToInt(Integer::intValue).distinct().sorted().toArray();
+        int chunks = (sorted.length + IDS_PER_REQUEST - 1) / IDS_PER_REQUEST;
+        IngestMetrics.current().stage("http " + resource).addExpected(chunks);
+        return fetchOrdered(resource, chunks, i -> "el bloque " + (i + 1), i -> {
+            // "[" y "]" no son válidos sin codificar en la ruta de una URI
+            StringBuilder path = new StringBuilder(resource).append("/%5B");
+            int end = Math.min(sorted.length, (i + 1) * IDS_PER_REQUEST);
+            for (int j = i * IDS_PER_REQUEST; j < end; j++) {
+                if (j > i * IDS_PER_REQUEST) {
+                    path.append(',');
+                }
+                path.append(sorted[j]);
+            }
+            path.append("%5D");
+            List<T> records = new ArrayList<>();
+            readRecords(resource, path.toString(), reader, records::add);
+            return records;
+        }, sink);
+    }
+
+    /**
+     * Descarga de una parte (una página o un bloque de ids) que se ejecuta en un hilo del pool.
+     */
+    @FunctionalInterface
+    private interface PartTask<T> {
+        List<T> run(int index) throws Exception;
+    }
+
+    /**
+     * Ejecuta las partes en paralelo y entrega sus registros al destino en orden de parte.
+     * Se usa una ventana de partes en curso: se consumen en orden y se van lanzando las siguientes,
+     * de modo que nunca hay más de 2 * hilos partes decodificadas pendientes de consumir.
+     * Si una parte falla, se cancelan las pendientes y se lanza la excepción.
+     * @return Número de registros entregados
+     */
+    private static <T> int fetchOrdered(String resource, int parts, IntFunction<String> label, PartTask<T> task,
+                                        RecordSink<? super T> sink) throws IOException, InterruptedException, SQLException {
+        if (parts <= 0) {
+            return 0;
+        }
+        int workers = Math.min(concurrency, parts);
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "api-" + resource);
+            t.setDaemon(true);
+            return t;
+        });
+
+        Deque<PendingPart<T>> window = new ArrayDeque<>();
+        int next = 0;
+        int count = 0;
+        try {
+            while (next < parts || !window.isEmpty()) {
+                while (next < parts && window.size() < workers * 2) {
+                    int index = next++;
+                    window.add(new PendingPart<>(label.apply(index), pool.submit(() -> task.run(index))));
+                }
+                for (T record : await(window.poll(), resource)) {
+                    sink.accept(record);
+                    count++;
+                }
+            }
+        } finally {
+            for (PendingPart<T> pending : window) {
+                pending.future.cancel(true);
+            }
+            pool.shutdownNow();
+        }
+        return count;
+    }
+
+    /**
+     * Espera a que una parte termine y relanza su error como IOException.
+     */
+    private static <T> List<T> await(PendingPart<T> pending, String resource) throws IOException, InterruptedException {
+        try {
+            return pending.future.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Error al procesar " + pending.label + " de " + resource + ": " + cause, cause);
+        }
+    }
+
+    /**
+     * Descarga una página y la decodifica en streaming:
+     * cada elemento de "results" se lee con el lector y se pasa al destino según llega.
+     * En las métricas de la carga ({@link IngestMetrics}) se separa el tiempo esperando a la red
+     * ("http &lt;recurso&gt;") del de descompresión y decodificación ("decode &lt;recurso&gt;");
+     * el tiempo que pasa el destino procesando los registros no cuenta en ninguna de las dos.
+     * @return Número total de páginas indicado en "info.pages", o -1 si la página no lo trae
+     */
+    private static <T> int readPage(String resource, int page, RecordReader<T> reader, RecordSink<? super T> sink)
+            throws IOException, InterruptedException, SQLException {
+        NetworkMeter meter = new NetworkMeter();
+        RecordSink<T> timedSink = meter.timed(sink);
+        InputStream body = doGetRequest(baseUrl + resource + "?page=" + page, meter, false);
+        try (JsonReader in = new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            int pages = -1;
+            boolean hasResults = false;
+            String error = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "info":
+                        pages = readPages(in);
+                        break;
+                    case "results":
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            timedSink.accept(reader.read(in));
+                        }
+                        in.endArray();
+                        hasResults = true;
+                        break;
+                    case "error":
+                        error = in.nextString();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+
+            if (!hasResults) {
+                throw new IOException("La página " + page + " de " + resource + " no contiene resultados"
+                        + (error != null ? ": " + error : ""));
+            }
+            cache.markValid(body);
+            return pages;
+        } catch (IllegalStateException | NumberFormatException ex) {
+            // JsonReader lanza IllegalStateException cuando el tipo de un token no es el esperado
+            throw new IOException("Respuesta no válida en la página " + page + " de " + resource + ": " + ex.getMessage(), ex);
+        } finally {
+            meter.report(resource);
+        }
+    }
+
+    /**
+     * Descarga una respuesta de un endpoint de ids y la decodifica en streaming.
+     * La API responde un array con los registros que existen; si aun así responde 404
+     * (ninguno de los ids existe), se toma como cero registros en lugar de cortar la descarga.
+     */
+    private static <T> void readRecords(String resource, String path, RecordReader<T> reader, RecordSink<? super T> sink)
+            throws IOException, InterruptedException, SQLException {
+        NetworkMeter meter = new NetworkMeter();
+        RecordSink<T> timedSink = meter.timed(sink);
+        InputStream body = doGetRequest(baseUrl + path, meter, true);
+        if (body == null) {
+            meter.report(resource);
+            return;
+        }
+        try (JsonReader in = new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            if (in.peek() == JsonToken.BEGIN_ARRAY) {
+                in.beginArray();
+                while (in.hasNext()) {
+                    timedSink.accept(reader.read(in));
+                }
+                in.endArray();
+            } else {
+                timedSink.accept(reader.read(in));
+            }
+            cache.markValid(body);
+        } catch (IllegalStateException | NumberFormatException ex) {
+            throw new IOException("Respuesta no válida en " + path + ": " + ex.getMessage(), ex);
+        } finally {
+            meter.report(resource);
+        }
+    }
+
+    /**
+     * Lee el objeto "info" y devuelve su campo "pages" (o -1 si no está).
+     */
+    private static int readPages(JsonReader in) throws IOException {
+        int pages = -1;
+        in.beginObject();
+        while (in.hasNext()) {
+            if (in.nextName().equals("pages") && in.peek() == JsonToken.NUMBER) {
+                pages = in.nextInt();
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return pages;
+    }
+
+    /**
+     * Realiza una petición HTTP GET a la URL especificada con el cliente compartido
+     * y retorna el cuerpo de la respuesta como InputStream, sin cargarlo entero en memoria.
+     * - Si la caché tiene la respuesta y sigue fresca, se devuelve sin hacer la petición.
+     * - Si la tiene pero ha caducado, se revalida con If-None-Match / If-Modified-Since y un 304 reutiliza el cuerpo guardado.
+     * - Se pide el cuerpo con gzip y se descomprime en streaming.
+     * - La petición pasa por el {@link RequestScheduler} (ritmo, peticiones en curso y reintentos de 429/5xx);
+     *   cualquier estado final distinto de 200 o 304 se convierte en IOException.
+     * @param url URL a la que se realizará la petición
+     * @param meter Acumula el tiempo de espera y los bytes que llegan por la red
+     * @param notFoundIsEmpty true para devolver null ante un 404 en lugar de lanzar IOException
+     * @return Cuerpo de la respuesta HTTP, ya descomprimido (null si es un 404 y notFoundIsEmpty)
+     * @throws IOException si ocurre un error de I/O
+     * @throws InterruptedException si la petición HTTP es interrumpida
+     */
+    private static InputStream doGetRequest(String url, NetworkMeter meter, boolean notFoundIsEmpty) throws IOException, InterruptedException {
+        HttpCache.Entry cached = cacheEnabled ? cache.lookup(url) : null;
+        if (cached != null && cached.isFresh()) {
+            return cache.serveFresh(cached);
+        }
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .header("Accept-Encoding", "gzip")
+                .GET();
+        if (cached != null) {
+            if (cached.getEtag() != null) {
+                builder.header("If-None-Match", cached.getEtag());
+            }
+            if (cached.getLastModified() != null) {
+                builder.header("If-Modified-Since", cached.getLastModified());
+            }
+        }
+        long start = System.nanoTime();
+        RequestScheduler.Response response = scheduler.send(client, builder.build());
+        meter.nanos += System.nanoTime() - start;
+        meter.retries += response.retries();
+        InputStream raw = new MeteredInputStream(response.body(), meter);
+
+        int status = response.statusCode();
+        if (status == 304 && cached != null) {
+            raw.close();
+            return cache.serveRevalidated(cached, response.headers());
+        }
+        if (status == 404 && notFoundIsEmpty) {
+            raw.close();
+            return null;
+        }
+        if (status != 200) {
+            // Un error no puede tomarse por una página: se corta aquí con su estado y el principio del cuerpo
+            String detail;
+            try (InputStream in = raw; InputStream err = cache.decode(response.headers(), in)) {
+                detail = new String(err.readNBytes(512), StandardCharsets.UTF_8).trim();
+            }
+            throw new IOException("HTTP " + status + " en " + url + (detail.isEmpty() ? "" : ": " + detail));
+        }
+        try {
+            return cacheEnabled ? cache.store(url, response.headers(), raw) : cache.decode(response.headers(), raw);
+        } catch (IOException | RuntimeException ex) {
+            // Sin flujo que devolver nadie cerraría el cuerpo, y la petición seguiría contando como en curso
+            try {
+                raw.close();
+            } catch (IOException closeEx) {
+                ex.addSuppressed(closeEx);
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Mediciones de una petición: tiempo de espera, bytes recibidos de la red y reintentos,
+     * y el tiempo y los registros que ha procesado el destino. Lo usa un solo hilo.
+     */
+    private static final class NetworkMeter {
+        private final long start = System.nanoTime();
+        private long nanos;
+        private long bytes;
+        private int retries;
+        private long sinkNanos;
+        private int records;
+
+        /**
+         * Envuelve el destino para descontar su tiempo del de decodificación.
+         */
+        private <T> RecordSink<T> timed(RecordSink<? super T> sink) {
+            return record -> {
+                long t = System.nanoTime();
+                sink.accept(record);
+                sinkNanos += System.nanoTime() - t;
+                records++;
+            };
+        }
+
+        /**
+         * Suma la petición a las etapas "http &lt;recurso&gt;" y "decode &lt;recurso&gt;" de la carga en curso.
+         */
+        private void report(String resource) {
+            IngestMetrics metrics = IngestMetrics.current();
+            IngestMetrics.Stage http = metrics.stage("http " + resource);
+            http.add(nanos, 0);
+            http.addBytes(bytes);
+            for (int i = 0; i < retries; i++) {
+                http.addRetry();
+            }
+            metrics.stage("decode " + resource).add(System.nanoTime() - start - nanos - sinkNanos, records);
+        }
+    }
+
+    /**
+     * Cuenta el tiempo bloqueado en las lecturas del cuerpo tal como llega de la red (antes de descomprimir).
+     */
+    private static final class MeteredInputStream extends FilterInputStream {
+        private final NetworkMeter meter;
+
+        private MeteredInputStream(InputStream in, NetworkMeter meter) {
+            super(in);
+            this.meter = meter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int b = super.read();
+            meter.nanos += System.nanoTime() - start;
+            if (b >= 0) {
+                meter.bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            int n = super.read(b, off, len);
+            meter.nanos += System.nanoTime() - start;
+            if (n > 0) {
+                meter.bytes += n;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Parte (página o bloque de ids) lanzada y pendiente de consumir.
+     */
+    private static final class PendingPart<T> {
+        private final String label;
+        private final Future<List<T>> future;
+
+        private PendingPart(String label, Future<List<T>> future) {
+            this.label = label;
+            this.future = future;
+        }
+    }
+}
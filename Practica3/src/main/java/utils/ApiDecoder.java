@@ -0,0 +1,184 @@
+package utils;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import models.CharacterData;
+import models.EpisodeData;
+import models.LocationData;
+
+import java.io.IOException;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Lectores en streaming de los registros de la API de Rick and Morty.
+ * Cada método consume un objeto JSON de un JsonReader campo a campo, sin construir
+ * un árbol JsonObject, y salta los campos que no se guardan en la base de datos.
+ */
+public class ApiDecoder {
+
+    private static final DateTimeFormatter AIR_DATE_FORMAT = DateTimeFormatter.ofPattern("MMMM d, yyyy", Locale.ENGLISH);
+
+    /**
+     * Lee una localización (id, nombre, tipo, dimensión).
+     * @param in Lector posicionado al inicio del objeto
+     * @return LocationData leída
+     * @throws IOException si el JSON no es válido
+     */
+    public static LocationData readLocation(JsonReader in) throws IOException {
+        int id = 0;
+        String name = null, type = null, dimension = null;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id": id = in.nextInt(); break;
+                case "name": name = nextStringOrNull(in); break;
+                case "type": type = nextStringOrNull(in); break;
+                case "dimension": dimension = nextStringOrNull(in); break;
+                default: in.skipValue();
+            }
+        }
+        in.endObject();
+        return new LocationData(id, name, type, dimension);
+    }
+
+    /**
+     * Lee un episodio (id, nombre, fecha de emisión, código de episodio).
+     * @param in Lector posicionado al inicio del objeto
+     * @return EpisodeData leído
+     * @throws IOException si el JSON no es válido
+     */
+    public static EpisodeData readEpisode(JsonReader in) throws IOException {
+        int id = 0;
+        String name = null, airDate = null, episode = null;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id": id = in.nextInt(); break;
+                case "name": name = nextStringOrNull(in); break;
+                case "air_date": airDate = nextStringOrNull(in); break;
+                case "episode": episode = nextStringOrNull(in); break;
+                default: in.skipValue();
+            }
+        }
+        in.endObject();
+        return new EpisodeData(id, name, parseAirDate(airDate), episode);
+    }
+
+    /**
+     * Lee un personaje: id, nombre, estado, especie, tipo, género, los IDs de su origin y location
+     * (extraídos de sus URLs) y los IDs de los episodios en los que aparece.
+     * @param in Lector posicionado al inicio del objeto
+     * @return CharacterData leído
+     * @throws IOException si el JSON no es válido
+     */
+    public static CharacterData readCharacter(JsonReader in) throws IOException {
+        int id = 0, idOrigin = 0, idLocation = 0;
+        String name = null, status = null, species = null, type = null, gender = null;
+        int[] episodeIds = new int[8];
+        int episodes = 0;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id": id = in.nextInt(); break;
+                case "name": name = nextStringOrNull(in); break;
+                case "status": status = nextStringOrNull(in); break;
+                case "species": species = nextStringOrNull(in); break;
+                case "type": type = nextStringOrNull(in); break;
+                case "gender": gender = nextStringOrNull(in); break;
+                case "origin": idOrigin = readLocationRef(in); break;
+                case "location": idLocation = readLocationRef(in); break;
+                case "episode":
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        if (episodes == episodeIds.length) {
+                            episodeIds = Arrays.copyOf(episodeIds, episodes * 2);
+                        }
+                        episodeIds[episodes++] = getIdFromUrl(nextStringOrNull(in));
+                    }
+                    in.endArray();
+                    break;
+                default: in.skipValue();
+            }
+        }
+        in.endObject();
+        return new CharacterData(id, name, status, species, type, gender, idOrigin, idLocation,
+                episodes == episodeIds.length ? episodeIds : Arrays.copyOf(episodeIds, episodes));
+    }
+
+    /**
+     * Lee un objeto {"name": ..., "url": ...} y devuelve el ID de la localización de su URL.
+     */
+    private static int readLocationRef(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return 0;
+        }
+        int id = 0;
+        in.beginObject();
+        while (in.hasNext()) {
+            if (in.nextName().equals("url")) {
+                id = getIdFromUrl(nextStringOrNull(in));
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return id;
+    }
+
+    private static String nextStringOrNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    /**
+     * Convierte una fecha de emisión de la API ("December 2, 2013") a java.sql.Date.
+     * Usa DateTimeFormatter, que a diferencia de SimpleDateFormat puede compartirse entre hilos.
+     * Su tiempo se registra aparte en la etapa "decode fechas" de las métricas de la carga.
+     * @param airDate Fecha en el formato de la API
+     * @return Fecha convertida, o la fecha actual si no se puede leer
+     */
+    public static Date parseAirDate(String airDate) {
+        long start = System.nanoTime();
+        try {
+            if (airDate == null) {
+                return Date.valueOf(LocalDate.now());
+            }
+            return Date.valueOf(LocalDate.parse(airDate, AIR_DATE_FORMAT));
+        } catch (DateTimeParseException ex) {
+            return Date.valueOf(LocalDate.now());
+        } finally {
+            IngestMetrics.current().stage("decode fechas").add(System.nanoTime() - start, 1);
+        }
+    }
+
+    /**
+     * Dada una URL (de una location, un episodio...), extrae el último segmento numérico como ID.
+     * Si no se puede extraer, retorna 0.
+     * @param url URL de la que extraer el ID
+     * @return ID extraído o 0 si falla
+     */
+    public static int getIdFromUrl(String url) {
+        if (url == null || url.isBlank()) {
+            return 0;
+        }
+        // Se parsea el tramo tras la última '/' sin partir la cadena (se llama una vez por episodio)
+        int start = url.lastIndexOf('/') + 1;
+        try {
+            return Integer.parseInt(url, start, url.length(), 10);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
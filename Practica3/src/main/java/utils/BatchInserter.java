@@ -0,0 +1,144 @@
+package utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Inserción por lotes sobre un PreparedStatement (addBatch/executeBatch).
+ * Acumula filas hasta el tamaño de lote y las envía en un solo viaje a la base de datos.
+ * Cada lote informa de cuántas filas insertó realmente: con INSERT ... ON CONFLICT DO NOTHING
+ * las filas que ya existían cuentan 0, igual que en los procedimientos almacenados.
+ * El tiempo de cada executeBatch se suma a la etapa "insert &lt;tabla&gt;" de {@link IngestMetrics}.
+ */
+public class BatchInserter<T> implements AutoCloseable {
+
+    /**
+     * Asigna los parámetros de una fila al PreparedStatement.
+     */
+    @FunctionalInterface
+    public interface Binder<T> {
+        void bind(PreparedStatement ps, T record) throws SQLException;
+    }
+
+    private final String table;
+    private final PreparedStatement ps;
+    private final int batchSize;
+    private final Binder<T> binder;
+    private BatchInserter<?> parent;
+    private String action = "insertadas";
+    private String stageName;
+
+    private int pending;
+    private int batches;
+    private int rows;
+    private int inserted;
+
+    /**
+     * @param conn Conexión a la base de datos
+     * @param table Nombre de la tabla (solo para los mensajes)
+     * @param sql Sentencia INSERT con parámetros
+     * @param batchSize Número de filas por lote
+     * @param binder Asignación de parámetros de cada fila
+     * @throws SQLException si no se puede preparar la sentencia
+     */
+    public BatchInserter(Connection conn, String table, String sql, int batchSize, Binder<T> binder) throws SQLException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("El tamaño de lote debe ser al menos 1");
+        }
+        this.table = table;
+        this.stageName = "insert " + table;
+        this.batchSize = batchSize;
+        this.binder = binder;
+        this.ps = conn.prepareStatement(sql);
+    }
+
+    /**
+     * Indica que este lote depende de otro (por ejemplo character_in_episode de character):
+     * antes de enviar un lote propio se envía el pendiente del padre, para respetar las claves ajenas.
+     * @param parent Inserción de la que dependen estas filas
+     * @return Este mismo objeto
+     */
+    public BatchInserter<T> after(BatchInserter<?> parent) {
+        this.parent = parent;
+        return this;
+    }
+
+    /**
+     * Cambia la palabra con la que se informa de cada lote (por defecto "insertadas"),
+     * para sentencias UPDATE o DELETE. También da nombre a su etapa en las métricas ("&lt;acción&gt; &lt;tabla&gt;").
+     * @param action Por ejemplo "actualizadas" o "borradas"
+     * @return Este mismo objeto
+     */
+    public BatchInserter<T> reportAs(String action) {
+        this.action = action;
+        this.stageName = action + " " + table;
+        return this;
+    }
+
+    /**
+     * Añade una fila al lote actual y lo envía si se ha llenado.
+     * @param record Fila a insertar
+     * @throws SQLException si falla el envío del lote
+     */
+    public void add(T record) throws SQLException {
+        binder.bind(ps, record);
+        ps.addBatch();
+        pending++;
+        if (pending >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Envía las filas pendientes e informa de cuántas se han insertado.
+     * @return Filas insertadas en este lote
+     * @throws SQLException si falla la ejecución del lote
+     */
+    public int flush() throws SQLException {
+        if (pending == 0) {
+            return 0;
+        }
+        if (parent != null) {
+            parent.flush();
+        }
+        long start = System.nanoTime();
+        int[] counts = ps.executeBatch();
+        IngestMetrics.current().stage(stageName).add(System.nanoTime() - start, pending);
+        int batchInserted = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                batchInserted += count;
+            }
+        }
+        batches++;
+        rows += pending;
+        inserted += batchInserted;
+        System.out.println("  " + table + " lote " + batches + ": " + batchInserted + "/" + pending + " filas " + action);
+        pending = 0;
+        return batchInserted;
+    }
+
+    /** @return Filas enviadas en total */
+    public int getRows() {
+        return rows;
+    }
+
+    /** @return Filas realmente insertadas (o afectadas, en UPDATE/DELETE) en total, sin contar conflictos */
+    public int getInserted() {
+        return inserted;
+    }
+
+    /** @return Lotes enviados */
+    public int getBatches() {
+        return batches;
+    }
+
+    /**
+     * Cierra la sentencia. Las filas que no se hayan enviado con {@link #flush()} se descartan.
+     */
+    @Override
+    public void close() throws SQLException {
+        ps.close();
+    }
+}
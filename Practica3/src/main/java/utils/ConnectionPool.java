@@ -0,0 +1,628 @@
+package utils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool acotado de conexiones JDBC.
+ * - Como mucho maxSize conexiones abiertas; si no hay ninguna libre, se espera hasta borrowTimeout.
+ * - Las conexiones libres se reutilizan en orden LIFO (la última devuelta, que está "caliente").
+ * - Al prestar una conexión que lleva un rato sin usarse se comprueba con isValid(); si no responde se descarta.
+ * - Un hilo de mantenimiento cierra las conexiones libres que superan idleTimeout y avisa, con la traza de
+ *   dónde se pidió, de las conexiones prestadas durante más de leakThreshold (posibles fugas).
+ * - Cada conexión guarda una caché LRU de PreparedStatement por texto SQL: prepareStatement(sql) devuelve
+ *   la sentencia ya preparada y su close() la deja lista para reutilizar en lugar de cerrarla.
+ * Las conexiones que se entregan son proxies: close() las devuelve al pool (deshaciendo lo que no se haya
+ * confirmado y restaurando autocommit). unwrap() llega a la conexión real, así que COPY sigue funcionando.
+ * El tiempo de espera y el uso del pool se pueden consultar con {@link #getStats()}.
+ */
+public class ConnectionPool {
+
+    public static final int DEFAULT_MAX_SIZE = 10;
+    public static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 30_000;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 5 * 60_000;
+    public static final long DEFAULT_LEAK_THRESHOLD_MILLIS = 60_000;
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+
+    // Por debajo de este tiempo sin uso no se valida la conexión al prestarla
+    private static final long VALIDATION_SKIP_MILLIS = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final long HOUSEKEEPING_PERIOD_MILLIS = 5_000;
+
+    private final String url;
+    private final Properties props;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long leakThresholdMillis;
+    private final int statementCacheSize;
+
+    private final Semaphore permits;
+    private final Deque<PhysicalConnection> idle = new ArrayDeque<>();
+    private final Set<PhysicalConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    // Métricas
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+    private final AtomicLong peakBorrowed = new AtomicLong();
+
+    /**
+     * Pool con los valores por defecto.
+     */
+    public ConnectionPool(String url, Properties props) {
+        this(url, props, DEFAULT_MAX_SIZE, DEFAULT_BORROW_TIMEOUT_MILLIS, DEFAULT_IDLE_TIMEOUT_MILLIS,
+                DEFAULT_LEAK_THRESHOLD_MILLIS, DEFAULT_STATEMENT_CACHE_SIZE);
+    }
+
+    /**
+     * @param url URL JDBC
+     * @param props Usuario, contraseña y demás propiedades del driver
+     * @param maxSize Conexiones abiertas como máximo
+     * @param borrowTimeoutMillis Espera máxima por una conexión libre
+     * @param idleTimeoutMillis Tiempo sin usarse tras el que se cierra una conexión libre
+     * @param leakThresholdMillis Tiempo prestada tras el que se avisa de una posible fuga (0 para no avisar)
+     * @param statementCacheSize Sentencias preparadas guardadas por conexión (0 para no guardar ninguna)
+     */
+    public ConnectionPool(String url, Properties props, int maxSize, long borrowTimeoutMillis, long idleTimeoutMillis,
+                          long leakThresholdMillis, int statementCacheSize) {
+        if (maxSize < 1 || borrowTimeoutMillis < 0 || idleTimeoutMillis < 0 || leakThresholdMillis < 0 || statementCacheSize < 0) {
+            throw new IllegalArgumentException("Parámetros del pool no válidos");
+        }
+        this.url = url;
+        this.props = props;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        housekeeper.scheduleWithFixedDelay(this::housekeeping, HOUSEKEEPING_PERIOD_MILLIS, HOUSEKEEPING_PERIOD_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Presta una conexión; hay que cerrarla (mejor con try-with-resources) para devolverla al pool.
+     * @return Conexión en modo autocommit
+     * @throws SQLException si no hay ninguna libre en borrowTimeout o no se puede abrir una nueva
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("El pool de conexiones está cerrado");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.increment();
+                throw new SQLException("No hay conexiones libres tras esperar " + borrowTimeoutMillis + " ms ("
+                        + maxSize + " en uso)");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrumpido esperando una conexión", ex);
+        }
+        PhysicalConnection pc;
+        try {
+            pc = takeIdle();
+            if (pc == null) {
+                pc = new PhysicalConnection(DriverManager.getConnection(url, props));
+                created.increment();
+            }
+        } catch (SQLException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+        long waited = System.nanoTime() - start;
+        borrows.increment();
+        waitNanos.add(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+
+        pc.borrowedAt = System.currentTimeMillis();
+        pc.borrowTrace = leakThresholdMillis > 0 ? new Exception("Conexión pedida aquí") : null;
+        pc.leakReported = false;
+        borrowed.add(pc);
+        peakBorrowed.accumulateAndGet(borrowed.size(), Math::max);
+        return pc.newProxy();
+    }
+
+    /**
+     * Saca la conexión libre más reciente, validándola si lleva un rato sin usarse.
+     * @return Conexión válida, o null si no queda ninguna libre
+     */
+    private PhysicalConnection takeIdle() {
+        while (true) {
+            PhysicalConnection pc;
+            synchronized (idle) {
+                pc = idle.pollFirst();
+            }
+            if (pc == null) {
+                return null;
+            }
+            if (System.currentTimeMillis() - pc.lastUsed < VALIDATION_SKIP_MILLIS || isValid(pc)) {
+                return pc;
+            }
+            discard(pc);
+        }
+    }
+
+    private static boolean isValid(PhysicalConnection pc) {
+        try {
+            return pc.raw.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Devuelve la conexión al pool tras dejarla como recién abierta; si no se puede, la descarta.
+     */
+    private void release(PhysicalConnection pc) {
+        borrowed.remove(pc);
+        boolean reusable = !closed;
+        try {
+            if (reusable && !pc.raw.isClosed()) {
+                if (!pc.raw.getAutoCommit()) {
+                    pc.raw.rollback();
+                    pc.raw.setAutoCommit(true);
+                }
+                if (pc.raw.isReadOnly()) {
+                    pc.raw.setReadOnly(false);
+                }
+                if (pc.raw.getTransactionIsolation() != pc.defaultIsolation) {
+                    pc.raw.setTransactionIsolation(pc.defaultIsolation);
+                }
+                pc.raw.clearWarnings();
+            } else {
+                reusable = false;
+            }
+        } catch (SQLException ex) {
+            reusable = false;
+        }
+        if (reusable) {
+            pc.lastUsed = System.currentTimeMillis();
+            synchronized (idle) {
+                idle.addFirst(pc);
+            }
+        } else {
+            discard(pc);
+        }
+        permits.release();
+    }
+
+    private void discard(PhysicalConnection pc) {
+        discarded.increment();
+        pc.closeQuietly();
+    }
+
+    /**
+     * Cierra las conexiones libres que llevan demasiado sin usarse y avisa de las prestadas desde hace demasiado.
+     */
+    private void housekeeping() {
+        long now = System.currentTimeMillis();
+        synchronized (idle) {
+            Iterator<PhysicalConnection> it = idle.descendingIterator(); // de la más antigua a la más reciente
+            while (it.hasNext()) {
+                PhysicalConnection pc = it.next();
+                if (now - pc.lastUsed < idleTimeoutMillis) {
+                    break;
+                }
+                it.remove();
+                discard(pc);
+            }
+        }
+        if (leakThresholdMillis > 0) {
+            for (PhysicalConnection pc : borrowed) {
+                if (!pc.leakReported && now - pc.borrowedAt > leakThresholdMillis) {
+                    pc.leakReported = true;
+                    leaks.increment();
+                    System.out.println("Aviso: una conexión lleva " + (now - pc.borrowedAt) / 1000
+                            + " s prestada sin devolverse al pool (posible fuga). Se pidió en:");
+                    if (pc.borrowTrace != null) {
+                        for (StackTraceElement e : pc.borrowTrace.getStackTrace()) {
+                            System.out.println("    at " + e);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Cierra las conexiones libres y deja de prestar conexiones; las prestadas se cierran al devolverlas.
+     */
+    public void shutdown() {
+        closed = true;
+        housekeeper.shutdownNow();
+        synchronized (idle) {
+            for (PhysicalConnection pc : idle) {
+                pc.closeQuietly();
+            }
+            idle.clear();
+        }
+    }
+
+    /**
+     * @return Estado y métricas acumuladas del pool
+     */
+    public Stats getStats() {
+        int idleCount;
+        synchronized (idle) {
+            idleCount = idle.size();
+        }
+        return new Stats(maxSize, borrowed.size(), idleCount, peakBorrowed.get(), borrows.sum(), waitNanos.sum(),
+                maxWaitNanos.get(), timeouts.sum(), created.sum(), discarded.sum(), leaks.sum(),
+                statementHits.sum(), statementMisses.sum());
+    }
+
+    /**
+     * Fotografía de las métricas del pool.
+     */
+    public static final class Stats {
+        private final int maxSize;
+        private final int active;
+        private final int idle;
+        private final long peakActive;
+        private final long borrows;
+        private final long waitNanos;
+        private final long maxWaitNanos;
+        private final long timeouts;
+        private final long created;
+        private final long discarded;
+        private final long leaks;
+        private final long statementHits;
+        private final long statementMisses;
+
+        private Stats(int maxSize, int active, int idle, long peakActive, long borrows, long waitNanos, long maxWaitNanos,
+                      long timeouts, long created, long discarded, long leaks, long statementHits, long statementMisses) {
+            this.maxSize = maxSize;
+            this.active = active;
+            this.idle = idle;
+            this.peakActive = peakActive;
+            this.borrows = borrows;
+            this.waitNanos = waitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+            this.timeouts = timeouts;
+            this.created = created;
+            this.discarded = discarded;
+            this.leaks = leaks;
+            this.statementHits = statementHits;
+            this.statementMisses = statementMisses;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        /** @return Conexiones prestadas ahora mismo */
+        public int getActive() {
+            return active;
+        }
+
+        /** @return Conexiones abiertas y libres ahora mismo */
+        public int getIdle() {
+            return idle;
+        }
+
+        /** @return Máximo de conexiones prestadas a la vez */
+        public long getPeakActive() {
+            return peakActive;
+        }
+
+        public long getBorrows() {
+            return borrows;
+        }
+
+        /** @return Espera media por una conexión, en ms */
+        public double getAverageWaitMillis() {
+            return borrows > 0 ? waitNanos / 1e6 / borrows : 0;
+        }
+
+        public double getMaxWaitMillis() {
+            return maxWaitNanos / 1e6;
+        }
+
+        /** @return Peticiones de conexión que agotaron la espera */
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        public long getCreated() {
+            return created;
+        }
+
+        /** @return Conexiones cerradas por inactividad, por no ser válidas o por error */
+        public long getDiscarded() {
+            return discarded;
+        }
+
+        public long getLeaks() {
+            return leaks;
+        }
+
+        public long getStatementHits() {
+            return statementHits;
+        }
+
+        public long getStatementMisses() {
+            return statementMisses;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Pool de conexiones: %d en uso, %d libres (máximo %d, pico %d); %d préstamos, "
+                            + "espera media %.2f ms y máxima %.2f ms, %d esperas agotadas; %d creadas, %d descartadas, "
+                            + "%d posibles fugas; caché de sentencias %d aciertos y %d fallos",
+                    active, idle, maxSize, peakActive, borrows, getAverageWaitMillis(), getMaxWaitMillis(), timeouts,
+                    created, discarded, leaks, statementHits, statementMisses);
+        }
+    }
+
+    /**
+     * Conexión real con su caché de sentencias y los datos del préstamo en curso.
+     */
+    private final class PhysicalConnection {
+        final Connection raw;
+        final int defaultIsolation;
+        // Caché LRU: el orden de acceso deja la menos usada al principio
+        final LinkedHashMap<String, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+        // Sentencias de la caché que el usuario tiene abiertas ahora mismo
+        final Map<PreparedStatement, Boolean> statementsInUse = new IdentityHashMap<>();
+        volatile long lastUsed = System.currentTimeMillis();
+        volatile long borrowedAt;
+        volatile Exception borrowTrace;
+        volatile boolean leakReported;
+
+        PhysicalConnection(Connection raw) throws SQLException {
+            this.raw = raw;
+            this.defaultIsolation = raw.getTransactionIsolation();
+        }
+
+        Connection newProxy() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    new ConnectionHandler(this));
+        }
+
+        /**
+         * Devuelve la sentencia preparada de la caché (o la prepara y la guarda), envuelta para que close() no la cierre.
+         * Si la de la caché ya está abierta por quien pidió la conexión, se prepara una aparte sin guardar.
+         */
+        PreparedStatement prepare(Connection proxy, String sql) throws SQLException {
+            if (statementCacheSize == 0) {
+                return raw.prepareStatement(sql);
+            }
+            PreparedStatement ps = statements.get(sql);
+            if (ps != null && statementsInUse.containsKey(ps)) {
+                statementMisses.increment();
+                return raw.prepareStatement(sql);
+            }
+            if (ps == null || ps.isClosed()) {
+                statementMisses.increment();
+                ps = raw.prepareStatement(sql);
+                statements.put(sql, ps);
+                if (statements.size() > statementCacheSize) {
+                    Iterator<Map.Entry<String, PreparedStatement>> it = statements.entrySet().iterator();
+                    while (statements.size() > statementCacheSize && it.hasNext()) {
+                        Map.Entry<String, PreparedStatement> eldest = it.next();
+                        if (!statementsInUse.containsKey(eldest.getValue())) {
+                            closeQuietly(eldest.getValue());
+                            it.remove();
+                        }
+                    }
+                }
+            } else {
+                statementHits.increment();
+            }
+            statementsInUse.put(ps, Boolean.TRUE);
+            PreparedStatement cached = ps;
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new StatementHandler(this, cached, proxy));
+        }
+
+        /**
+         * Deja la sentencia de la caché como recién preparada para el siguiente uso.
+         */
+        void returnStatement(PreparedStatement ps) {
+            statementsInUse.remove(ps);
+            try {
+                ps.clearParameters();
+                ps.clearBatch();
+                ps.clearWarnings();
+                ps.setFetchSize(0);
+                ps.setMaxRows(0);
+                ps.setQueryTimeout(0);
+            } catch (SQLException ex) {
+                statements.values().remove(ps);
+                closeQuietly(ps);
+            }
+        }
+
+        void closeQuietly() {
+            for (PreparedStatement ps : statements.values()) {
+                closeQuietly(ps);
+            }
+            statements.clear();
+            try {
+                raw.close();
+            } catch (SQLException ignored) {
+                // ya no se puede hacer nada con ella
+            }
+        }
+
+        private void closeQuietly(PreparedStatement ps) {
+            try {
+                ps.close();
+            } catch (SQLException ignored) {
+                // se descarta igualmente
+            }
+        }
+    }
+
+    /**
+     * Proxy de la conexión prestada: close() la devuelve al pool y prepareStatement(sql) usa la caché.
+     * Después de close() cualquier otra llamada falla, como en una conexión cerrada.
+     */
+    private final class ConnectionHandler implements InvocationHandler {
+        private final PhysicalConnection pc;
+        // Sentencias fuera de la caché abiertas con esta conexión, que se cierran al devolverla.
+        // Las que ya ha cerrado quien las pidió se quitan al añadir otra, así que la lista no crece
+        // con préstamos largos (sesión de Hibernate, sincronización en una transacción)
+        private final List<Statement> opened = new ArrayList<>();
+        private boolean closed;
+
+        ConnectionHandler(PhysicalConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        // Las sentencias de la caché que sigan abiertas vuelven a estar disponibles
+                        for (PreparedStatement ps : pc.statementsInUse.keySet().toArray(new PreparedStatement[0])) {
+                            pc.returnStatement(ps);
+                        }
+                        for (Statement st : opened) {
+                            try {
+                                st.close();
+                            } catch (SQLException ignored) {
+                                // la conexión se revisa al devolverla
+                            }
+                        }
+                        opened.clear();
+                        release(pc);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || pc.raw.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Conexión del pool " + pc.raw;
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("La conexión ya se ha devuelto al pool");
+            }
+            if (name.equals("prepareStatement") && args.length == 1) {
+                PreparedStatement ps = pc.prepare((Connection) proxy, (String) args[0]);
+                if (!Proxy.isProxyClass(ps.getClass())) {
+                    track(ps);
+                }
+                return ps;
+            }
+            Object result;
+            try {
+                result = method.invoke(pc.raw, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+            if (result instanceof Statement) {
+                track((Statement) result);
+            }
+            return result;
+        }
+
+        private void track(Statement st) {
+            opened.removeIf(this::isClosed);
+            opened.add(st);
+        }
+
+        private boolean isClosed(Statement st) {
+            try {
+                return st.isClosed();
+            } catch (SQLException ex) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Proxy de una sentencia de la caché: close() la deja lista para reutilizar y getConnection() devuelve el proxy.
+     */
+    private static final class StatementHandler implements InvocationHandler {
+        private final PhysicalConnection pc;
+        private final PreparedStatement ps;
+        private final Connection connection;
+        private boolean closed;
+
+        StatementHandler(PhysicalConnection pc, PreparedStatement ps, Connection connection) {
+            this.pc = pc;
+            this.ps = ps;
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    // Si la conexión ya se devolvió, la sentencia volvió a la caché con ella
+                    if (!closed && !connection.isClosed()) {
+                        pc.returnStatement(ps);
+                    }
+                    closed = true;
+                    return null;
+                case "isClosed":
+                    return closed || connection.isClosed();
+                case "getConnection":
+                    return connection;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            if (closed || connection.isClosed()) {
+                throw new SQLException("La sentencia está cerrada");
+            }
+            try {
+                return method.invoke(ps, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package utils;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
+
+/**
+ * Escritor de filas en formato texto de COPY de PostgreSQL sobre un CopyIn de pgjdbc.
+ * Codifica cada campo directamente en UTF-8 sobre un buffer reutilizable que se envía
+ * al servidor cada vez que se llena, sin construir nunca el CSV completo en memoria.
+ */
+public class CopyWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final CopyIn copyIn;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int pos;
+    private boolean firstField = true;
+    private long rows;
+    private long bytes;
+    private long sendNanos;
+
+    CopyWriter(CopyIn copyIn) {
+        this.copyIn = copyIn;
+    }
+
+    /**
+     * Inicia una sentencia COPY ... FROM STDIN sobre la conexión.
+     * @param conn Conexión a PostgreSQL
+     * @param copySql Sentencia COPY (formato texto)
+     * @return Escritor listo para recibir filas
+     * @throws SQLException si no se puede iniciar el COPY
+     */
+    public static CopyWriter open(Connection conn, String copySql) throws SQLException {
+        return new CopyWriter(conn.unwrap(PGConnection.class).getCopyAPI().copyIn(copySql));
+    }
+
+    public CopyWriter writeInt(int value) throws SQLException {
+        separator();
+        ensure(11);
+        long v = value;
+        if (v < 0) {
+            buffer[pos++] = '-';
+            v = -v;
+        }
+        int start = pos;
+        do {
+            buffer[pos++] = (byte) ('0' + (v % 10));
+            v /= 10;
+        } while (v > 0);
+        // Los dígitos se han escrito al revés
+        for (int i = start, j = pos - 1; i < j; i++, j--) {
+            byte tmp = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = tmp;
+        }
+        return this;
+    }
+
+    public CopyWriter writeText(String value) throws SQLException {
+        separator();
+        if (value == null) {
+            writeNull();
+            return this;
+        }
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            ensure(4);
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': buffer[pos++] = '\\'; buffer[pos++] = '\\'; break;
+                case '\t': buffer[pos++] = '\\'; buffer[pos++] = 't'; break;
+                case '\n': buffer[pos++] = '\\'; buffer[pos++] = 'n'; break;
+                case '\r': buffer[pos++] = '\\'; buffer[pos++] = 'r'; break;
+                default:
+                    if (c < 0x80) {
+                        buffer[pos++] = (byte) c;
+                    } else if (c < 0x800) {
+                        buffer[pos++] = (byte) (0xC0 | (c >> 6));
+                        buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+                    } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                        int cp = Character.toCodePoint(c, value.charAt(++i));
+                        buffer[pos++] = (byte) (0xF0 | (cp >> 18));
+                        buffer[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                        buffer[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                        buffer[pos++] = (byte) (0x80 | (cp & 0x3F));
+                    } else if (Character.isSurrogate(c)) {
+                        // Suplente sin pareja: no es UTF-8 válido y PostgreSQL rechazaría todo el COPY;
+                        // se sustituye por '?' como hace String.getBytes(UTF_8)
+                        buffer[pos++] = '?';
+                    } else {
+                        buffer[pos++] = (byte) (0xE0 | (c >> 12));
+                        buffer[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                        buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+                    }
+            }
+        }
+        return this;
+    }
+
+    public CopyWriter writeDate(Date value) throws SQLException {
+        if (value == null) {
+            separator();
+            writeNull();
+            return this;
+        }
+        return writeText(value.toString()); // yyyy-mm-dd
+    }
+
+    /**
+     * Termina la fila actual.
+     */
+    public void endRow() throws SQLException {
+        ensure(1);
+        buffer[pos++] = '\n';
+        firstField = true;
+        rows++;
+    }
+
+    /** @return Filas escritas hasta el momento */
+    public long getRows() {
+        return rows;
+    }
+
+    /** @return Bytes enviados al servidor hasta el momento */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /** @return Tiempo bloqueado enviando datos al servidor (incluido el cierre del COPY), en nanosegundos */
+    public long getSendNanos() {
+        return sendNanos;
+    }
+
+    /**
+     * Envía lo que quede en el buffer y cierra el COPY.
+     * @return Número de filas que el servidor ha recibido
+     * @throws SQLException si el servidor rechaza los datos
+     */
+    public long finish() throws SQLException {
+        flush();
+        long start = System.nanoTime();
+        long copied = copyIn.endCopy();
+        sendNanos += System.nanoTime() - start;
+        return copied;
+    }
+
+    /**
+     * Cancela el COPY si sigue activo, dejando la conexión utilizable para hacer rollback.
+     */
+    public void cancel() {
+        try {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        } catch (SQLException ex) {
+            System.out.println("Error al cancelar el COPY: " + ex.getMessage());
+        }
+    }
+
+    private void separator() throws SQLException {
+        if (firstField) {
+            firstField = false;
+        } else {
+            ensure(1);
+            buffer[pos++] = '\t';
+        }
+    }
+
+    private void writeNull() throws SQLException {
+        ensure(2);
+        buffer[pos++] = '\\';
+        buffer[pos++] = 'N';
+    }
+
+    private void ensure(int bytes) throws SQLException {
+        if (pos + bytes > buffer.length) {
+            flush();
+        }
+    }
+
+    private void flush() throws SQLException {
+        if (pos > 0) {
+            long start = System.nanoTime();
+            copyIn.writeToCopy(buffer, 0, pos);
+            sendNanos += System.nanoTime() - start;
+            bytes += pos;
+            pos = 0;
+        }
+    }
+}
@@ -1,29 +1,146 @@
 package utils;
 
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
 import java.sql.*;
 import java.util.Properties;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class DBUtils {
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
     private static final String urlDB = "jdbc:postgresql://localhost:5432/serie";
-    
+
     private static final Properties props = new Properties() {{
         setProperty("user", "usuariodev");
         setProperty("password", "123");
     }};
 
+    private static final ConnectionPool pool = new ConnectionPool(urlDB, props);
+
+    /**
+     * Presta una conexión del pool; al cerrarla vuelve al pool en lugar de cerrarse.
+     */
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(urlDB, props);
+        return pool.getConnection();
+    }
+
+    /**
+     * @return Pool de conexiones, por ejemplo para consultar sus métricas con getStats()
+     */
+    public static ConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Cierra las conexiones libres del pool al salir de la aplicación.
+     */
+    public static void shutdown() {
+        pool.shutdown();
     }
 
+    /**
+     * Ejecuta la consulta y devuelve sus filas ya leídas en un CachedRowSet desconectado,
+     * de modo que la conexión y la sentencia se devuelven al pool antes de retornar.
+     */
     public static ResultSet execSELECT(String query, Object... params) throws SQLException {
-        Connection con = getConnection();
-        PreparedStatement ps = con.prepareStatement(query);
+        try (Connection con = getConnection();
+             PreparedStatement ps = con.prepareStatement(query)) {
+
+            for (int i = 0; i < params.length; i++) {
+                ps.setObject(i + 1, params[i]);
+            }
 
-        for (int i = 0; i < params.length; i++) {
-            ps.setObject(i + 1, params[i]);
+            try (ResultSet rs = ps.executeQuery()) {
+                CachedRowSet rows = RowSetProvider.newFactory().createCachedRowSet();
+                rows.populate(rs);
+                return rows;
+            }
         }
+    }
 
-        return ps.executeQuery();
+    /**
+     * Ejecuta la consulta con una conexión propia del pool y devuelve sus filas como un Stream perezoso.
+     * Las filas se leen del servidor con un cursor de fetchSize en fetchSize según se consumen,
+     * así que recorrer una tabla entera ocupa memoria constante.
+     * Hay que cerrar el Stream (mejor con try-with-resources) para liberar la sentencia y la conexión.
+     * Los errores al leer se lanzan como {@link UncheckedSQLException}.
+     * @param sql Consulta
+     * @param mapper Conversión de cada fila
+     * @param fetchSize Filas que se piden al servidor cada vez
+     * @param params Parámetros de la consulta
+     * @return Stream de las filas convertidas
+     * @throws SQLException si falla la ejecución de la consulta
+     */
+    public static <T> Stream<T> stream(String sql, RowMapper<T> mapper, int fetchSize, Object... params) throws SQLException {
+        Connection con = getConnection();
+        try {
+            // El cursor del servidor solo se usa dentro de una transacción
+            con.setAutoCommit(false);
+            con.setReadOnly(true);
+            return stream(con, sql, mapper, fetchSize, params).onClose(() -> {
+                try {
+                    con.close();
+                } catch (SQLException ex) {
+                    throw new UncheckedSQLException(ex);
+                }
+            });
+        } catch (SQLException | RuntimeException ex) {
+            con.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Como {@link #stream(String, RowMapper, int, Object...)}, pero con una conexión del llamante, que debe tener
+     * el autocommit desactivado (si no, pgjdbc leería todo el resultado de golpe). Al cerrar el Stream se liberan
+     * el ResultSet y la sentencia; la conexión y su transacción siguen siendo del llamante.
+     */
+    public static <T> Stream<T> stream(Connection con, String sql, RowMapper<T> mapper, int fetchSize, Object... params) throws SQLException {
+        if (con.getAutoCommit()) {
+            throw new IllegalStateException("Para leer con cursor la conexión debe tener el autocommit desactivado");
+        }
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("El tamaño de bloque debe ser al menos 1");
+        }
+        PreparedStatement ps = con.prepareStatement(sql);
+        ResultSet rs;
+        try {
+            ps.setFetchSize(fetchSize);
+            for (int i = 0; i < params.length; i++) {
+                ps.setObject(i + 1, params[i]);
+            }
+            rs = ps.executeQuery();
+        } catch (SQLException ex) {
+            ps.close();
+            throw ex;
+        }
+        Spliterator<T> rows = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                try {
+                    if (!rs.next()) {
+                        return false;
+                    }
+                    action.accept(mapper.map(rs));
+                    return true;
+                } catch (SQLException ex) {
+                    throw new UncheckedSQLException(ex);
+                }
+            }
+        };
+        return StreamSupport.stream(rows, false).onClose(() -> {
+            try {
+                rs.close();
+                ps.close();
+            } catch (SQLException ex) {
+                throw new UncheckedSQLException(ex);
+            }
+        });
     }
 
     public static void execDML(String query, Object... params) throws SQLException {
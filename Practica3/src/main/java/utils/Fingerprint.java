@@ -0,0 +1,45 @@
+package utils;
+
+/**
+ * Huella de 64 bits (FNV-1a) del contenido de una fila, para detectar cambios sin comparar campo a campo.
+ * Se encadena: {@code Fingerprint.add(Fingerprint.add(Fingerprint.START, name), type)...}
+ * Los null se distinguen de la cadena vacía y cada campo termina con un separador.
+ */
+public class Fingerprint {
+
+    public static final long START = 0xcbf29ce484222325L;
+
+    private static final long PRIME = 0x100000001b3L;
+    private static final int NULL_MARK = 0x1F;
+    private static final int SEPARATOR = 0x1E;
+
+    public static long add(long hash, String value) {
+        if (value == null) {
+            return mix(mix(hash, NULL_MARK), SEPARATOR);
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash = mix(hash, c & 0xFF);
+            hash = mix(hash, c >>> 8);
+        }
+        return mix(hash, SEPARATOR);
+    }
+
+    public static long add(long hash, Integer value) {
+        if (value == null) {
+            return mix(mix(hash, NULL_MARK), SEPARATOR);
+        }
+        return add(hash, value.intValue());
+    }
+
+    public static long add(long hash, int value) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            hash = mix(hash, (value >>> shift) & 0xFF);
+        }
+        return mix(hash, SEPARATOR);
+    }
+
+    private static long mix(long hash, int octet) {
+        return (hash ^ octet) * PRIME;
+    }
+}
@@ -3,10 +3,21 @@ package utils;
 import models.Character;
 import models.Location;
 import models.Episode;
+import org.hibernate.FlushMode;
+import org.hibernate.HibernateException;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
 import org.hibernate.cfg.Configuration;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -19,11 +30,17 @@ public class HibernateUtils {
         try {
         	// Configuración básica para construir una sesión con hibernate
             Configuration config = new Configuration()
-                .setProperty("hibernate.connection.driver_class", "org.postgresql.Driver")
-                .setProperty("hibernate.connection.url", "jdbc:postgresql://localhost:5432/serie")
-                .setProperty("hibernate.connection.username", "usuariodev")
-                .setProperty("hibernate.connection.password", "123")
+                // Las conexiones salen del pool de DBUtils (misma BD, usuario y límites que las cargas)
+                .setProperty("hibernate.connection.provider_class", PooledConnectionProvider.class.getName())
+                // Filas por viaje al servidor cuando la consulta va en una transacción (sesiones de solo lectura)
+                .setProperty("hibernate.jdbc.fetch_size", String.valueOf(DBUtils.DEFAULT_FETCH_SIZE))
                 .setProperty("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect")
+                // Caché de segundo nivel (entidades y consultas marcadas como cacheables) en memoria
+                .setProperty("hibernate.cache.use_second_level_cache", "true")
+                .setProperty("hibernate.cache.use_query_cache", "true")
+                .setProperty("hibernate.cache.region.factory_class", LocalCacheRegionFactory.class.getName())
+                .setProperty(LocalCacheRegionFactory.MAX_ENTRIES, String.valueOf(LocalCacheRegionFactory.DEFAULT_MAX_ENTRIES))
+                .setProperty("hibernate.generate_statistics", "true")
                 // Agrego las clases de entidad:
                 .addAnnotatedClass(Character.class)
                 .addAnnotatedClass(Location.class)
@@ -40,6 +57,113 @@ public class HibernateUtils {
         return sessionFactory.openSession();
     }
 
+    /**
+     * Sesión para consultas que solo leen y que aprovechan la caché de segundo nivel o la de consultas:
+     * - las entidades se cargan en modo solo lectura (sin copia para detectar cambios) y nunca se hace flush;
+     * - la sesión retiene una conexión en modo solo lectura y sin autocommit, así que PostgreSQL ejecuta las consultas
+     *   en una transacción READ ONLY y el driver lee los resultados por bloques con un cursor.
+     * Al cerrarla la conexión vuelve al pool, que deshace la transacción y quita el modo de solo lectura.
+     */
+    public static Session getReadOnlySession() {
+        Session session = sessionFactory.withOptions()
+                .connectionHandlingMode(PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_HOLD)
+                .flushMode(FlushMode.MANUAL)
+                .openSession();
+        try {
+            session.setDefaultReadOnly(true);
+            session.doWork(HibernateUtils::prepareReadOnly);
+            return session;
+        } catch (HibernateException ex) {
+            session.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Sesión sin estado para listados y búsquedas grandes: no hay contexto de persistencia, así que las filas
+     * no se guardan en la sesión ni se revisan al cerrar, y las relaciones perezosas no se cargan.
+     * No usa la caché de segundo nivel. Trabaja sobre una conexión propia del pool en modo solo lectura y sin autocommit
+     * (transacción READ ONLY y lectura por bloques), que se devuelve al cerrar la sesión.
+     */
+    public static StatelessSession getStatelessSession() {
+        Connection conn;
+        try {
+            conn = DBUtils.getConnection();
+            try {
+                prepareReadOnly(conn);
+            } catch (SQLException ex) {
+                conn.close();
+                throw ex;
+            }
+        } catch (SQLException ex) {
+            throw new HibernateException("Error al obtener una conexión de solo lectura: " + ex.getMessage(), ex);
+        }
+        StatelessSession session = sessionFactory.openStatelessSession(conn);
+        // Hibernate no cierra las conexiones que se le pasan: el proxy la devuelve al pool al cerrar la sesión
+        return (StatelessSession) Proxy.newProxyInstance(StatelessSession.class.getClassLoader(),
+                new Class<?>[]{StatelessSession.class}, (proxy, method, args) -> {
+                    try {
+                        return method.invoke(session, args);
+                    } catch (InvocationTargetException ex) {
+                        throw ex.getCause();
+                    } finally {
+                        if (method.getName().equals("close") && method.getParameterCount() == 0) {
+                            conn.close();
+                        }
+                    }
+                });
+    }
+
+    private static void prepareReadOnly(Connection conn) throws SQLException {
+        conn.setAutoCommit(false);
+        conn.setReadOnly(true);
+    }
+
+    /**
+     * @return Estadísticas de Hibernate (sentencias preparadas, aciertos de caché...) desde el arranque o el último clear()
+     */
+    public static Statistics getStatistics() {
+        return sessionFactory.getStatistics();
+    }
+
+    /**
+     * Vacía toda la caché de segundo nivel. Hay que llamarlo después de escribir en las tablas
+     * sin pasar por Hibernate (cargas con JDBC), porque Hibernate no se entera de esos cambios.
+     */
+    public static void evictCache() {
+        sessionFactory.getCache().evictAllRegions();
+    }
+
+    /**
+     * Muestra los aciertos y fallos de la caché de segundo nivel, por región y en total, y los de la caché de consultas.
+     */
+    public static void printCacheStats() {
+        Statistics stats = sessionFactory.getStatistics();
+        LocalCacheRegionFactory regions = (LocalCacheRegionFactory)
+                sessionFactory.unwrap(SessionFactoryImplementor.class).getCache().getRegionFactory();
+
+        System.out.printf("%nCaché de segundo nivel (máximo %d entradas por región):%n", regions.getMaxEntries());
+        System.out.printf("  %-40s %9s %9s %9s %9s %10s %8s%n", "región", "aciertos", "fallos", "guardados", "entradas", "descartes", "% acierto");
+        for (String name : stats.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics region = stats.getCacheRegionStatistics(name);
+            if (region == null) {
+                continue;
+            }
+            System.out.printf("  %-40s %9d %9d %9d %9d %10d %8s%n", name, region.getHitCount(), region.getMissCount(),
+                    region.getPutCount(), regions.getSize(name), regions.getEvictions(name),
+                    hitRatio(region.getHitCount(), region.getMissCount()));
+        }
+        System.out.printf("  Entidades: %d aciertos, %d fallos (%s)%n", stats.getSecondLevelCacheHitCount(),
+                stats.getSecondLevelCacheMissCount(), hitRatio(stats.getSecondLevelCacheHitCount(), stats.getSecondLevelCacheMissCount()));
+        System.out.printf("  Consultas: %d aciertos, %d fallos (%s)%n", stats.getQueryCacheHitCount(),
+                stats.getQueryCacheMissCount(), hitRatio(stats.getQueryCacheHitCount(), stats.getQueryCacheMissCount()));
+    }
+
+    private static String hitRatio(long hits, long misses) {
+        long total = hits + misses;
+        return total == 0 ? "-" : String.format("%.1f%%", 100.0 * hits / total);
+    }
+
     public static void shutdown() {
         sessionFactory.close();
     }
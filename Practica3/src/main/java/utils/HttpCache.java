@@ -0,0 +1,428 @@
+package utils;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Caché en disco de las respuestas GET de la API, indexada por URL.
+ * Por cada URL se guarda el cuerpo ya descomprimido (&lt;clave&gt;.body) y sus metadatos
+ * (&lt;clave&gt;.meta: ETag, Last-Modified y hasta cuándo es fresca según Cache-Control: max-age).
+ * - Si la entrada sigue fresca se sirve del disco sin hacer ninguna petición.
+ * - Si no, se revalida con If-None-Match / If-Modified-Since y un 304 reutiliza el cuerpo guardado.
+ * - Un 200 se guarda mientras se lee (no hace falta tenerlo entero en memoria);
+ *   la entrada solo se publica si el cuerpo se ha leído completo y quien lo lee lo ha dado por bueno
+ *   con {@link #markValid(InputStream)}, así que una respuesta que no se pudo decodificar no se guarda.
+ * Lleva la cuenta de aciertos, fallos y bytes ahorrados para informar al acabar.
+ */
+public class HttpCache {
+
+    public static final String DEFAULT_DIR = ".api-cache";
+
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "last-modified";
+    private static final String FRESH_UNTIL = "fresh-until";
+    private static final String SIZE = "size";
+
+    private final Path dir;
+
+    private final AtomicLong freshHits = new AtomicLong();
+    private final AtomicLong revalidated = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bytesDownloaded = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+
+    /**
+     * @param dir Carpeta donde se guardan las respuestas (se crea si no existe)
+     */
+    public HttpCache(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Caché en la carpeta indicada por la propiedad de sistema "api.cache.dir" o, si no está, en {@link #DEFAULT_DIR}.
+     */
+    public static HttpCache fromSystemProperties() {
+        return new HttpCache(Paths.get(System.getProperty("api.cache.dir", DEFAULT_DIR)));
+    }
+
+    /**
+     * Respuesta guardada de una URL.
+     */
+    public final class Entry {
+        private final Path body;
+        private final Path meta;
+        private final Properties props;
+
+        private Entry(Path body, Path meta, Properties props) {
+            this.body = body;
+            this.meta = meta;
+            this.props = props;
+        }
+
+        /** @return true si todavía se puede usar sin preguntar al servidor */
+        public boolean isFresh() {
+            return System.currentTimeMillis() < Long.parseLong(props.getProperty(FRESH_UNTIL, "0"));
+        }
+
+        public String getEtag() {
+            return props.getProperty(ETAG);
+        }
+
+        public String getLastModified() {
+            return props.getProperty(LAST_MODIFIED);
+        }
+
+        private long size() {
+            return Long.parseLong(props.getProperty(SIZE, "0"));
+        }
+    }
+
+    /**
+     * Busca la respuesta guardada de una URL.
+     * @param url URL de la petición
+     * @return La entrada, o null si no hay ninguna completa
+     */
+    public Entry lookup(String url) {
+        Path body = dir.resolve(key(url) + ".body");
+        Path meta = dir.resolve(key(url) + ".meta");
+        if (!Files.isRegularFile(meta) || !Files.isRegularFile(body)) {
+            return null;
+        }
+        Properties props = new Properties();
+        try (Reader r = Files.newBufferedReader(meta, StandardCharsets.UTF_8)) {
+            props.load(r);
+        } catch (IOException | IllegalArgumentException ex) {
+            return null;
+        }
+        if (!url.equals(props.getProperty("url"))) {
+            return null;
+        }
+        return new Entry(body, meta, props);
+    }
+
+    /**
+     * Sirve una entrada fresca sin hacer la petición.
+     * @return Cuerpo guardado
+     * @throws IOException si no se puede abrir el fichero
+     */
+    public InputStream serveFresh(Entry entry) throws IOException {
+        InputStream in = Files.newInputStream(entry.body);
+        freshHits.incrementAndGet();
+        bytesSaved.addAndGet(entry.size());
+        return in;
+    }
+
+    /**
+     * Sirve una entrada tras un 304 y actualiza su frescura con las cabeceras nuevas.
+     * @return Cuerpo guardado
+     * @throws IOException si no se puede abrir el fichero
+     */
+    public InputStream serveRevalidated(Entry entry, HttpHeaders headers) throws IOException {
+        long maxAge = maxAge(headers);
+        if (maxAge > 0) {
+            entry.props.setProperty(FRESH_UNTIL, Long.toString(System.currentTimeMillis() + maxAge * 1000));
+            writeMeta(entry.meta, entry.props);
+        }
+        InputStream in = Files.newInputStream(entry.body);
+        revalidated.incrementAndGet();
+        bytesSaved.addAndGet(entry.size());
+        return in;
+    }
+
+    /**
+     * Envuelve el cuerpo de un 200: lo descomprime si viene en gzip y, si la respuesta se puede guardar,
+     * lo copia al disco según se lee. La entrada se publica al cerrar el cuerpo solo si antes se ha llamado
+     * a {@link #markValid(InputStream)}.
+     * @param url URL de la petición
+     * @param headers Cabeceras de la respuesta
+     * @param raw Cuerpo tal como llega de la red
+     * @return Cuerpo descomprimido
+     * @throws IOException si falla la descompresión o no se puede crear el fichero temporal
+     */
+    public InputStream store(String url, HttpHeaders headers, InputStream raw) throws IOException {
+        misses.incrementAndGet();
+        InputStream body = decode(headers, raw);
+
+        String cacheControl = headers.firstValue("Cache-Control").orElse("").toLowerCase(Locale.ROOT);
+        if (cacheControl.contains("no-store")) {
+            return body;
+        }
+        Properties props = new Properties();
+        props.setProperty("url", url);
+        headers.firstValue("ETag").ifPresent(v -> props.setProperty(ETAG, v));
+        headers.firstValue("Last-Modified").ifPresent(v -> props.setProperty(LAST_MODIFIED, v));
+        long maxAge = cacheControl.contains("no-cache") ? 0 : maxAge(headers);
+        props.setProperty(FRESH_UNTIL, Long.toString(System.currentTimeMillis() + maxAge * 1000));
+        if (maxAge == 0 && !props.containsKey(ETAG) && !props.containsKey(LAST_MODIFIED)) {
+            // Sin validadores ni frescura no hay forma de reutilizarla
+            return body;
+        }
+
+        Files.createDirectories(dir);
+        String key = key(url);
+        Path tmp = Files.createTempFile(dir, key, ".tmp");
+        try {
+            return new TeeInputStream(body, tmp, dir.resolve(key + ".body"), dir.resolve(key + ".meta"), props);
+        } catch (IOException ex) {
+            Files.deleteIfExists(tmp);
+            throw ex;
+        }
+    }
+
+    /**
+     * Da por bueno un cuerpo devuelto por {@link #store}: se ha decodificado sin errores,
+     * así que al cerrarlo se guarda en la caché. Si se cierra sin llamar a este método, se descarta.
+     * Con cualquier otro flujo (una entrada servida de la caché o un cuerpo que no se guarda) no hace nada.
+     * @param body Cuerpo devuelto por store, serveFresh, serveRevalidated o decode
+     */
+    public void markValid(InputStream body) {
+        if (body instanceof TeeInputStream) {
+            ((TeeInputStream) body).valid = true;
+        }
+    }
+
+    /**
+     * Envuelve un cuerpo que no se va a guardar: cuenta sus bytes y lo descomprime si viene en gzip.
+     * @param headers Cabeceras de la respuesta
+     * @param raw Cuerpo tal como llega de la red
+     * @return Cuerpo descomprimido
+     * @throws IOException si la cabecera gzip no es válida
+     */
+    public InputStream decode(HttpHeaders headers, InputStream raw) throws IOException {
+        InputStream counted = new CountingInputStream(raw, bytesDownloaded);
+        String encoding = headers.firstValue("Content-Encoding").orElse("").trim();
+        return encoding.equalsIgnoreCase("gzip")
+                ? new GZIPInputStream(counted, 8192)
+                : new BufferedInputStream(counted, 8192);
+    }
+
+    /**
+     * Muestra el resumen de uso de la caché desde el último informe y pone los contadores a cero.
+     */
+    public void printReport() {
+        long fresh = freshHits.getAndSet(0);
+        long reval = revalidated.getAndSet(0);
+        long miss = misses.getAndSet(0);
+        long downloaded = bytesDownloaded.getAndSet(0);
+        long saved = bytesSaved.getAndSet(0);
+        if (fresh + reval + miss == 0) {
+            return;
+        }
+        System.out.printf("Caché HTTP: %d aciertos (%d sin petición, %d revalidados con 304), %d fallos, "
+                + "%s descargados, %s ahorrados%n", fresh + reval, fresh, reval, miss, formatBytes(downloaded), formatBytes(saved));
+    }
+
+    public long getHits() {
+        return freshHits.get() + revalidated.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getBytesSaved() {
+        return bytesSaved.get();
+    }
+
+    /**
+     * Segundos de "max-age" de Cache-Control, o 0 si no viene.
+     */
+    private static long maxAge(HttpHeaders headers) {
+        Optional<String> cacheControl = headers.firstValue("Cache-Control");
+        if (cacheControl.isEmpty()) {
+            return 0;
+        }
+        for (String directive : cacheControl.get().split(",")) {
+            String d = directive.trim().toLowerCase(Locale.ROOT);
+            if (d.startsWith("max-age=")) {
+                try {
+                    return Math.max(0, Long.parseLong(d.substring("max-age=".length()).replace("\"", "")));
+                } catch (NumberFormatException ex) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static void writeMeta(Path meta, Properties props) throws IOException {
+        Path tmp = Files.createTempFile(meta.getParent(), meta.getFileName().toString(), ".tmp");
+        try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            props.store(w, null);
+        }
+        Files.move(tmp, meta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Nombre de fichero para una URL: SHA-256 en hexadecimal.
+     */
+    private static String key(String url) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 no disponible", ex);
+        }
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KiB", bytes / 1024.0);
+        }
+        return String.format("%.1f MiB", bytes / (1024.0 * 1024.0));
+    }
+
+    /**
+     * Cuenta los bytes que pasan por el flujo (los que llegan por la red, antes de descomprimir).
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private final AtomicLong counter;
+
+        CountingInputStream(InputStream in, AtomicLong counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                counter.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                counter.addAndGet(n);
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Copia al fichero temporal lo que se va leyendo. Al cerrar lee lo que quede del cuerpo
+     * y, si todo se ha leído sin errores y el cuerpo se ha dado por bueno, mueve el temporal a su sitio
+     * y escribe los metadatos; si no, borra el temporal.
+     */
+    private final class TeeInputStream extends FilterInputStream {
+        private final Path tmp;
+        private final Path body;
+        private final Path meta;
+        private final Properties props;
+        private final OutputStream out;
+        private long size;
+        private boolean failed;
+        private boolean closed;
+        private volatile boolean valid;
+
+        TeeInputStream(InputStream in, Path tmp, Path body, Path meta, Properties props) throws IOException {
+            super(in);
+            this.tmp = tmp;
+            this.body = body;
+            this.meta = meta;
+            this.props = props;
+            this.out = Files.newOutputStream(tmp);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n;
+            try {
+                n = in.read(b, off, len);
+                if (n > 0) {
+                    out.write(b, off, n);
+                    size += n;
+                }
+            } catch (IOException ex) {
+                failed = true;
+                throw ex;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Lo saltado también tiene que acabar en el fichero
+            byte[] buf = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int r = read(buf, 0, (int) Math.min(buf.length, n - skipped));
+                if (r < 0) {
+                    break;
+                }
+                skipped += r;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (!valid) {
+                    failed = true;
+                } else if (!failed) {
+                    byte[] buf = new byte[8192];
+                    while (read(buf, 0, buf.length) >= 0) {
+                        // leer el resto para guardar el cuerpo completo
+                    }
+                }
+            } catch (IOException ex) {
+                failed = true;
+            } finally {
+                out.close();
+                in.close();
+                if (failed) {
+                    Files.deleteIfExists(tmp);
+                } else {
+                    props.setProperty(SIZE, Long.toString(size));
+                    Files.move(tmp, body, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    writeMeta(meta, props);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Métricas de una carga de datos, por etapas (vaciado, descarga y decodificación por entidad,
+ * inserción por tabla, commit...). Cada etapa acumula tiempo, filas, bytes, llamadas y reintentos.
+ * Las etapas pueden solaparse (la descarga va en paralelo y en tubería con la escritura),
+ * así que sus tiempos no suman el total de la carga.
+ * La carga en curso se obtiene con {@link #current()}, de modo que el cliente HTTP, los decodificadores
+ * y los loaders registran sus tiempos sin tener que pasarse el objeto de uno a otro.
+ * Todas las operaciones se pueden llamar desde varios hilos a la vez.
+ */
+public class IngestMetrics {
+
+    private static volatile IngestMetrics current = new IngestMetrics();
+
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+    private final long startNanos = System.nanoTime();
+    private volatile long endNanos;
+
+    /**
+     * Empieza una carga nueva: a partir de ahora {@link #current()} devuelve sus métricas.
+     * @return Métricas de la nueva carga
+     */
+    public static IngestMetrics begin() {
+        IngestMetrics metrics = new IngestMetrics();
+        current = metrics;
+        return metrics;
+    }
+
+    /**
+     * @return Métricas de la carga en curso (o de la última)
+     */
+    public static IngestMetrics current() {
+        return current;
+    }
+
+    /**
+     * Devuelve la etapa con ese nombre, creándola si no existe. Las etapas se muestran en orden de creación.
+     * @param name Nombre de la etapa, por ejemplo "http character"
+     * @return Etapa
+     */
+    public synchronized Stage stage(String name) {
+        return stages.computeIfAbsent(name, Stage::new);
+    }
+
+    /**
+     * Empieza a cronometrar una etapa; el tiempo se suma al cerrar el cronómetro.
+     * Pensado para try-with-resources cuando la etapa cuenta filas:
+     * <pre>try (IngestMetrics.Timer t = metrics.time("carga location")) { t.rows(loader.loadLocations(conn, source)); }</pre>
+     * Para un paso sin filas (commit, DDL...) es más corto {@link #time(String, Object, Step)}.
+     * @param name Nombre de la etapa
+     * @return Cronómetro en marcha
+     */
+    public Timer time(String name) {
+        return new Timer(stage(name));
+    }
+
+    /**
+     * Paso de una carga que se cronometra, aplicado a un objeto (normalmente la conexión).
+     */
+    @FunctionalInterface
+    public interface Step<T, E extends Exception> {
+        void run(T target) throws E;
+    }
+
+    /**
+     * Ejecuta un paso sobre el objeto indicado y suma su tiempo a la etapa, aunque falle:
+     * <pre>metrics.time("commit", conn, Connection::commit);</pre>
+     * @param name Nombre de la etapa
+     * @param target Objeto sobre el que se ejecuta el paso
+     * @param step Paso a cronometrar
+     * @throws E la excepción del paso
+     */
+    public <T, E extends Exception> void time(String name, T target, Step<T, E> step) throws E {
+        Timer timer = time(name);
+        try {
+            step.run(target);
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Da por terminada la carga (fija su duración total).
+     */
+    public void finish() {
+        endNanos = System.nanoTime();
+    }
+
+    /** @return Duración total de la carga en milisegundos (hasta ahora si no ha terminado) */
+    public double getTotalMillis() {
+        long end = endNanos != 0 ? endNanos : System.nanoTime();
+        return (end - startNanos) / 1e6;
+    }
+
+    /** @return Etapas registradas, en orden de creación */
+    public synchronized List<Stage> getStages() {
+        return Collections.unmodifiableList(new ArrayList<>(stages.values()));
+    }
+
+    /**
+     * @param name Nombre de la etapa
+     * @return La etapa, o null si no se ha registrado
+     */
+    public synchronized Stage getStage(String name) {
+        return stages.get(name);
+    }
+
+    /**
+     * Muestra el informe: una línea por etapa con tiempo, filas, filas/s, bytes, llamadas y reintentos,
+     * y el estado del pool de conexiones.
+     */
+    public void printReport() {
+        System.out.printf("%nMétricas de la carga (total %.0f ms; las etapas se solapan):%n", getTotalMillis());
+        System.out.printf("  %-28s %10s %9s %11s %12s %8s %9s%n", "etapa", "ms", "filas", "filas/s", "bytes", "llamadas", "reintentos");
+        for (Stage s : getStages()) {
+            System.out.printf("  %-28s %10.1f %9d %11.0f %12d %8d %9d%n",
+                    s.getName(), s.getMillis(), s.getRows(), s.getRowsPerSecond(), s.getBytes(), s.getCalls(), s.getRetries());
+        }
+        System.out.println(DBUtils.getPool().getStats());
+    }
+
+    /**
+     * Contadores de una etapa.
+     */
+    public static final class Stage {
+        private final String name;
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder expected = new LongAdder();
+
+        private Stage(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Suma una ejecución de la etapa.
+         * @param elapsedNanos Tiempo empleado
+         * @param rowCount Filas procesadas
+         */
+        public void add(long elapsedNanos, long rowCount) {
+            nanos.add(elapsedNanos);
+            rows.add(rowCount);
+            calls.increment();
+        }
+
+        public void addBytes(long count) {
+            bytes.add(count);
+        }
+
+        public void addRetry() {
+            retries.increment();
+        }
+
+        /**
+         * Suma llamadas que se sabe que tendrá la etapa (por ejemplo las páginas de un recurso),
+         * para poder mostrar el progreso.
+         * @param count Llamadas previstas
+         */
+        public void addExpected(long count) {
+            expected.add(count);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getNanos() {
+            return nanos.sum();
+        }
+
+        public double getMillis() {
+            return nanos.sum() / 1e6;
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        public long getRetries() {
+            return retries.sum();
+        }
+
+        /** @return Llamadas previstas, o 0 si no se conocen */
+        public long getExpected() {
+            return expected.sum();
+        }
+
+        /** @return Filas por segundo de tiempo de la etapa (0 si no hay tiempo registrado) */
+        public double getRowsPerSecond() {
+            long n = nanos.sum();
+            return n > 0 ? rows.sum() * 1e9 / n : 0;
+        }
+    }
+
+    /**
+     * Cronómetro de una etapa; al cerrarlo suma el tiempo transcurrido y las filas indicadas.
+     */
+    public static final class Timer implements AutoCloseable {
+        private final Stage stage;
+        private final long start = System.nanoTime();
+        private long rows;
+
+        private Timer(Stage stage) {
+            this.stage = stage;
+        }
+
+        /**
+         * @param count Filas procesadas dentro del cronómetro
+         * @return Este mismo cronómetro
+         */
+        public Timer rows(long count) {
+            this.rows = count;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            stage.add(System.nanoTime() - start, rows);
+        }
+    }
+}
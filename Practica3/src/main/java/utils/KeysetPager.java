@@ -0,0 +1,103 @@
+package utils;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Scanner;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Recorre un listado por páginas desde la consola con paginación por clave (keyset): cada página se pide con
+ * "id &gt; último id de la página anterior ORDER BY id LIMIT n", que el índice de la clave primaria resuelve
+ * saltando directamente a la posición, sin leer ni descartar las filas anteriores como haría OFFSET.
+ * Así la memoria (una página) y el tiempo por página no dependen del tamaño de la tabla.
+ * Para volver atrás se guarda el id de inicio de cada página ya vista.
+ */
+public class KeysetPager {
+
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private static volatile int pageSize = DEFAULT_PAGE_SIZE;
+
+    /**
+     * Consulta de una página.
+     */
+    public interface PageQuery<T> {
+        /**
+         * @param afterId Se devuelven las filas con id mayor que este (Integer.MIN_VALUE para la primera página)
+         * @param limit Número máximo de filas
+         * @return Filas ordenadas por id
+         */
+        List<T> fetch(int afterId, int limit);
+    }
+
+    public static int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @param size Filas por página en los listados (entre 1 y {@link #MAX_PAGE_SIZE})
+     */
+    public static void setPageSize(int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("El tamaño de página debe estar entre 1 y " + MAX_PAGE_SIZE);
+        }
+        pageSize = size;
+    }
+
+    /**
+     * Muestra el listado página a página. Tras cada página se puede pasar a la siguiente (Intro),
+     * volver a la anterior ('a') o terminar ('q').
+     * @param scanner Scanner de la entrada estándar
+     * @param title Título del listado
+     * @param query Consulta de cada página
+     * @param idOf Id de una fila (la clave de la paginación)
+     * @param printer Muestra una fila
+     * @return false si el listado está vacío
+     */
+    public static <T> boolean browse(Scanner scanner, String title, PageQuery<T> query, ToIntFunction<T> idOf, Consumer<T> printer) {
+        int size = pageSize;
+        Deque<Integer> previousStarts = new ArrayDeque<>();
+        int start = Integer.MIN_VALUE;
+        int page = 1;
+        while (true) {
+            // Se pide una fila de más para saber si hay página siguiente sin otra consulta
+            List<T> rows = query.fetch(start, size + 1);
+            if (rows.isEmpty() && page == 1) {
+                return false;
+            }
+            boolean hasNext = rows.size() > size;
+            if (hasNext) {
+                rows = rows.subList(0, size);
+            }
+
+            System.out.println("\n" + title + " (página " + page + "):");
+            rows.forEach(printer);
+
+            StringBuilder options = new StringBuilder();
+            if (hasNext) {
+                options.append("Intro: siguiente página | ");
+            }
+            if (page > 1) {
+                options.append("a: anterior | ");
+            }
+            options.append(hasNext ? "q: terminar" : "Intro o q: terminar");
+            System.out.print(options + ": ");
+            String input = scanner.nextLine().trim();
+
+            if (input.equalsIgnoreCase("a") && page > 1) {
+                start = previousStarts.pop();
+                page--;
+            } else if (input.isEmpty() && hasNext) {
+                previousStarts.push(start);
+                start = idOf.applyAsInt(rows.get(rows.size() - 1));
+                page++;
+            } else if (input.equalsIgnoreCase("q") || !hasNext) {
+                return true;
+            }
+            // cualquier otra entrada vuelve a mostrar la misma página
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package utils;
+
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.hibernate.cache.cfg.spi.DomainDataRegionBuildingContext;
+import org.hibernate.cache.cfg.spi.DomainDataRegionConfig;
+import org.hibernate.cache.spi.support.DomainDataStorageAccess;
+import org.hibernate.cache.spi.support.RegionFactoryTemplate;
+import org.hibernate.cache.spi.support.StorageAccess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caché de segundo nivel de Hibernate en la propia JVM, sin proveedores externos (Ehcache, Infinispan...).
+ * Cada región (una por entidad o colección cacheada, más la de consultas) es un mapa LRU con un máximo
+ * de entradas: al llenarse se descarta la menos usada, así que la memoria queda acotada aunque crezcan las tablas.
+ * La región de marcas de tiempo (última modificación de cada tabla, con la que Hibernate decide si un resultado
+ * de la caché de consultas sigue valiendo) no se acota: si perdiera entradas se servirían consultas caducadas.
+ * El máximo se configura con la propiedad {@link #MAX_ENTRIES}.
+ */
+public class LocalCacheRegionFactory extends RegionFactoryTemplate {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String MAX_ENTRIES = "local_cache.max_entries";
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private final Map<String, LruStorage> regions = new ConcurrentHashMap<>();
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    @Override
+    protected void prepareForUse(SessionFactoryOptions settings, Map<String, Object> configValues) {
+        Object value = configValues.get(MAX_ENTRIES);
+        if (value != null) {
+            maxEntries = Integer.parseInt(value.toString());
+        }
+    }
+
+    @Override
+    protected void releaseFromUse() {
+        regions.values().forEach(LruStorage::release);
+        regions.clear();
+    }
+
+    @Override
+    protected DomainDataStorageAccess createDomainDataStorageAccess(DomainDataRegionConfig regionConfig,
+                                                                    DomainDataRegionBuildingContext buildingContext) {
+        return register(regionConfig.getRegionName(), maxEntries);
+    }
+
+    @Override
+    protected StorageAccess createQueryResultsRegionStorageAccess(String regionName, SessionFactoryImplementor sessionFactory) {
+        return register(regionName, maxEntries);
+    }
+
+    @Override
+    protected StorageAccess createTimestampsRegionStorageAccess(String regionName, SessionFactoryImplementor sessionFactory) {
+        return register(regionName, Integer.MAX_VALUE);
+    }
+
+    private LruStorage register(String regionName, int capacity) {
+        LruStorage storage = new LruStorage(capacity);
+        regions.put(regionName, storage);
+        return storage;
+    }
+
+    /**
+     * @param regionName Nombre de la región
+     * @return Entradas que hay ahora en la región (0 si no existe)
+     */
+    public int getSize(String regionName) {
+        LruStorage storage = regions.get(regionName);
+        return storage != null ? storage.size() : 0;
+    }
+
+    /**
+     * @param regionName Nombre de la región
+     * @return Entradas descartadas por falta de sitio desde que se creó la región
+     */
+    public long getEvictions(String regionName) {
+        LruStorage storage = regions.get(regionName);
+        return storage != null ? storage.evictions : 0;
+    }
+
+    /** @return Máximo de entradas de cada región (salvo la de marcas de tiempo) */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Almacén de una región: LinkedHashMap en orden de acceso, que descarta la entrada más antigua al superar la capacidad.
+     * Las regiones se leen desde varias sesiones (y desde el hilo de las cargas), así que se sincroniza cada operación.
+     */
+    private static final class LruStorage implements DomainDataStorageAccess {
+        private final Map<Object, Object> entries;
+        private volatile long evictions;
+
+        LruStorage(int capacity) {
+            entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+                    if (size() > capacity) {
+                        evictions++;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        @Override
+        public synchronized Object getFromCache(Object key, SharedSessionContractImplementor session) {
+            return entries.get(key);
+        }
+
+        @Override
+        public synchronized void putIntoCache(Object key, Object value, SharedSessionContractImplementor session) {
+            entries.put(key, value);
+        }
+
+        @Override
+        public synchronized void removeFromCache(Object key, SharedSessionContractImplementor session) {
+            entries.remove(key);
+        }
+
+        @Override
+        public synchronized void clearCache(SharedSessionContractImplementor session) {
+            entries.clear();
+        }
+
+        @Override
+        public synchronized boolean contains(Object key) {
+            return entries.containsKey(key);
+        }
+
+        @Override
+        public synchronized void evictData() {
+            entries.clear();
+        }
+
+        @Override
+        public synchronized void evictData(Object key) {
+            entries.remove(key);
+        }
+
+        @Override
+        public synchronized void release() {
+            entries.clear();
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+}
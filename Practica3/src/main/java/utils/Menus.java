@@ -1,10 +1,21 @@
 package utils;
 
+import java.util.LinkedHashSet;
 import java.util.Scanner;
+import java.util.Set;
 
+import services.BlueGreenLoad;
+import services.BulkLoad;
 import services.CharacterService;
+import services.DatabaseService;
+import services.DatabaseService.LoadMode;
+import services.DeltaSync;
 import services.EpisodeService;
+import services.FillJob;
 import services.LocationService;
+import services.ParallelLoad;
+import services.ResumableLoad;
+import services.SnapshotService;
 
 public class Menus {
 	public static void menuPrincipal() {
@@ -13,6 +24,10 @@ public class Menus {
         System.out.println("2. Gestión de locations");
         System.out.println("3. Gestión de episodios");
         System.out.println("4. Llenar la BBDD desde la API");
+        System.out.println("5. Tamaño de página de los listados (ahora " + KeysetPager.getPageSize() + ")");
+        if (FillJob.isRunning()) {
+            System.out.println("   (hay una carga en marcha en segundo plano; progreso en la opción 4)");
+        }
         System.out.println("0. Salir");
         System.out.print("Selecciona una opción: ");
     }
@@ -122,4 +137,114 @@ public class Menus {
         System.out.println("6. Salir");
         System.out.print("Elige opción: ");
     }
+	
+	public static void menuCargaBD(Scanner scanner) {
+		int opcion;
+	    do {
+	    	System.out.println("\nMenú Carga de la BBDD desde la API:");
+			System.out.println("1. Recarga completa (INSERT por lotes)");
+			System.out.println("2. Recarga completa (COPY)");
+			System.out.println("3. Sincronización incremental (solo cambios)");
+			System.out.println("4. Recarga completa desde una instantánea local (COPY)");
+			System.out.println("5. Exportar la BBDD a una instantánea local");
+			System.out.println("6. Refrescar registros concretos por id");
+			System.out.println("7. Recarga completa reanudable (commit cada N páginas)");
+			System.out.println("8. Recarga completa en tablas a la sombra (sin bloquear las consultas)");
+			System.out.println("9. Recarga masiva validada en memoria (claves reconstruidas al final)");
+			System.out.println("10. Recarga completa con varias conexiones en paralelo");
+			System.out.println("11. Ver el progreso de la carga en marcha");
+			System.out.println("12. Cancelar la carga en marcha");
+			System.out.println("13. Ver estadísticas de la caché de Hibernate");
+	        System.out.println("0. Volver al menú anterior");
+	        System.out.print("Elija opción: ");
+	        
+	        opcion = IntValidator.validarEntero(scanner);
+
+	        // Las cargas se lanzan en segundo plano; los menús siguen disponibles mientras tanto
+	        switch (opcion) {
+	            case 1:
+	                FillJob.start("Recarga completa (INSERT por lotes)", () -> DatabaseService.fillDatabase(LoadMode.BATCH));
+	                break;
+	            case 2:
+	                FillJob.start("Recarga completa (COPY)", () -> DatabaseService.fillDatabase(LoadMode.COPY));
+	                break;
+	            case 3:
+	                FillJob.start("Sincronización incremental", DeltaSync::syncDatabase);
+	                break;
+	            case 4:
+	                String origen = pedirFichero(scanner);
+	                FillJob.start("Recarga desde " + origen, () -> SnapshotService.importSnapshot(origen, LoadMode.COPY));
+	                break;
+	            case 5:
+	                SnapshotService.exportSnapshot(pedirFichero(scanner));
+	                break;
+	            case 6:
+	                Set<Integer> personajes = pedirIds(scanner, "personajes");
+	                Set<Integer> localizaciones = pedirIds(scanner, "localizaciones");
+	                Set<Integer> episodios = pedirIds(scanner, "episodios");
+	                FillJob.start("Refresco por id", () -> DatabaseService.refresh(personajes, localizaciones, episodios));
+	                break;
+	            case 7:
+	                System.out.print("Páginas por commit (" + ResumableLoad.DEFAULT_PAGES_PER_COMMIT + " recomendado): ");
+	                int paginas = IntValidator.validarEntero(scanner);
+	                int porCommit = paginas > 0 ? paginas : ResumableLoad.DEFAULT_PAGES_PER_COMMIT;
+	                FillJob.start("Recarga reanudable", () -> ResumableLoad.run(LoadMode.BATCH, porCommit));
+	                break;
+	            case 8:
+	                FillJob.start("Recarga en tablas a la sombra", BlueGreenLoad::run);
+	                break;
+	            case 9:
+	                FillJob.start("Recarga masiva validada", BulkLoad::run);
+	                break;
+	            case 10:
+	                System.out.print("Conexiones en paralelo (" + ParallelLoad.DEFAULT_WORKERS + " recomendado, máximo "
+	                        + ParallelLoad.maxWorkers() + "): ");
+	                int conexiones = IntValidator.validarEntero(scanner);
+	                int workers = conexiones > 0 ? conexiones : ParallelLoad.DEFAULT_WORKERS;
+	                FillJob.start("Recarga en paralelo", () -> ParallelLoad.run(workers));
+	                break;
+	            case 11:
+	                FillJob.followProgress(scanner);
+	                break;
+	            case 12:
+	                FillJob.cancel();
+	                break;
+	            case 13:
+	                HibernateUtils.printCacheStats();
+	                break;
+	            case 0:
+	                System.out.println("Volviendo al menú anterior...");
+	                break;
+	            default:
+	                System.out.println("Opción inválida. Inténtalo de nuevo.");
+	                break;
+	        }
+	    } while (opcion != 0);
+	}
+
+	private static String pedirFichero(Scanner scanner) {
+		System.out.print("Fichero de la instantánea [" + SnapshotService.DEFAULT_FILE + "]: ");
+		String fichero = scanner.nextLine().trim();
+		return fichero.isEmpty() ? SnapshotService.DEFAULT_FILE : fichero;
+	}
+
+	/**
+	 * Pide una lista de ids separados por comas (vacía si se deja en blanco). Se ignoran los valores no numéricos.
+	 */
+	private static Set<Integer> pedirIds(Scanner scanner, String nombre) {
+		System.out.print("Ids de " + nombre + " a refrescar (separados por comas, vacío para ninguno): ");
+		Set<Integer> ids = new LinkedHashSet<>();
+		for (String parte : scanner.nextLine().split(",")) {
+			String valor = parte.trim();
+			if (valor.isEmpty()) {
+				continue;
+			}
+			try {
+				ids.add(Integer.parseInt(valor));
+			} catch (NumberFormatException e) {
+				System.out.println("Se ignora '" + valor + "': no es un número entero.");
+			}
+		}
+		return ids;
+	}
 }
@@ -0,0 +1,45 @@
+package utils;
+
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Proveedor de conexiones de Hibernate que las toma del pool de {@link DBUtils}, en lugar del pool
+ * de pruebas que trae Hibernate. Así las sesiones y las cargas con JDBC comparten conexiones, límites y métricas,
+ * y al devolver una conexión el pool la deja como recién abierta (sin transacción, autocommit y sin modo
+ * de solo lectura), de modo que las sesiones de solo lectura no contagian su modo a las siguientes.
+ */
+public class PooledConnectionProvider implements ConnectionProvider {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return DBUtils.getConnection();
+    }
+
+    @Override
+    public void closeConnection(Connection conn) throws SQLException {
+        conn.close();
+    }
+
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    @Override
+    public boolean isUnwrappableAs(Class<?> unwrapType) {
+        return unwrapType.isInstance(this);
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> unwrapType) {
+        if (isUnwrappableAs(unwrapType)) {
+            return unwrapType.cast(this);
+        }
+        throw new IllegalArgumentException("No se puede obtener " + unwrapType.getName() + " de " + getClass().getName());
+    }
+}
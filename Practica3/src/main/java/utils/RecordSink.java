@@ -0,0 +1,13 @@
+package utils;
+
+import java.sql.SQLException;
+
+/**
+ * Destino de los registros que se van leyendo de una fuente (API, fichero...).
+ * Normalmente es la fase de inserción en la base de datos, de ahí la SQLException;
+ * también puede ser una cola acotada que bloquea mientras está llena, de ahí la InterruptedException.
+ */
+@FunctionalInterface
+public interface RecordSink<T> {
+    void accept(T record) throws SQLException, InterruptedException;
+}
@@ -0,0 +1,13 @@
+package utils;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * Origen de registros que se recorre una vez entregando cada registro a un destino.
+ * Por ejemplo, la descarga paginada de un recurso de la API.
+ */
+@FunctionalInterface
+public interface RecordSource<T> {
+    void forEach(RecordSink<? super T> sink) throws IOException, InterruptedException, SQLException;
+}
@@ -0,0 +1,292 @@
+package utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Planificador de las peticiones HTTP a la API:
+ * - Limita el ritmo con un token bucket (peticiones por segundo y ráfaga máxima).
+ * - Limita las peticiones en curso; una petición cuenta hasta que se cierra su cuerpo.
+ * - Reintenta los 429, los 5xx y los errores de red con espera exponencial y jitter ("full jitter"),
+ *   respetando la cabecera Retry-After cuando viene (en segundos o como fecha HTTP).
+ *   Si el servidor pide esperar más que la espera máxima, se falla en el momento en lugar de
+ *   reintentar antes de tiempo o quedarse bloqueado.
+ * Un 429 o 503 con Retry-After pausa a todos los hilos, no solo al que lo recibió,
+ * porque el límite del servidor es común a todas las peticiones.
+ * Se puede compartir entre hilos.
+ */
+public class RequestScheduler {
+
+    public static final double DEFAULT_RATE = 20.0;
+    public static final int DEFAULT_BURST = 10;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 8;
+    public static final int DEFAULT_MAX_RETRIES = 5;
+    public static final Duration DEFAULT_BASE_DELAY = Duration.ofMillis(250);
+    public static final Duration DEFAULT_MAX_DELAY = Duration.ofSeconds(30);
+
+    private final double ratePerNano;
+    private final double burst;
+    private final Semaphore inFlight;
+    private final int maxRetries;
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+
+    // Token bucket: puede quedar en negativo, que equivale a reservar turno para los que ya esperan
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    private volatile long pausedUntil;
+
+    /**
+     * Planificador con los valores por defecto.
+     */
+    public RequestScheduler() {
+        this(DEFAULT_RATE, DEFAULT_BURST, DEFAULT_MAX_IN_FLIGHT, DEFAULT_MAX_RETRIES, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * @param ratePerSecond Peticiones por segundo sostenidas
+     * @param burst Peticiones que se pueden lanzar seguidas tras un rato sin actividad
+     * @param maxInFlight Peticiones en curso como máximo
+     * @param maxRetries Reintentos por petición antes de rendirse
+     * @param baseDelay Espera del primer reintento (se dobla en cada uno)
+     * @param maxDelay Espera máxima entre reintentos; un Retry-After mayor hace fallar la petición
+     */
+    public RequestScheduler(double ratePerSecond, int burst, int maxInFlight, int maxRetries, Duration baseDelay, Duration maxDelay) {
+        if (ratePerSecond <= 0 || burst < 1 || maxInFlight < 1 || maxRetries < 0) {
+            throw new IllegalArgumentException("Parámetros del planificador no válidos");
+        }
+        this.ratePerNano = ratePerSecond / 1e9;
+        this.burst = burst;
+        this.tokens = burst;
+        this.inFlight = new Semaphore(maxInFlight, true);
+        this.maxRetries = maxRetries;
+        this.baseDelayNanos = baseDelay.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+    }
+
+    /**
+     * Respuesta de una petición planificada. Hay que cerrar el cuerpo (o leerlo y cerrarlo)
+     * para liberar el hueco de petición en curso.
+     */
+    public static final class Response {
+        private final int statusCode;
+        private final HttpHeaders headers;
+        private final InputStream body;
+        private final int retries;
+
+        private Response(int statusCode, HttpHeaders headers, InputStream body, int retries) {
+            this.statusCode = statusCode;
+            this.headers = headers;
+            this.body = body;
+            this.retries = retries;
+        }
+
+        public int statusCode() {
+            return statusCode;
+        }
+
+        public HttpHeaders headers() {
+            return headers;
+        }
+
+        public InputStream body() {
+            return body;
+        }
+
+        /** @return Reintentos que hicieron falta para obtener esta respuesta */
+        public int retries() {
+            return retries;
+        }
+    }
+
+    /**
+     * Envía la petición respetando el ritmo y el límite de peticiones en curso, y la reintenta
+     * mientras el servidor responda 429 o 5xx o falle la conexión.
+     * Cualquier otra respuesta (2xx, 304, 4xx...) se devuelve tal cual, para que decida quien llama.
+     * @param client Cliente HTTP
+     * @param request Petición
+     * @return Respuesta, con el cuerpo sin leer
+     * @throws IOException si se agotan los reintentos o el Retry-After supera la espera máxima
+     * @throws InterruptedException si la espera es interrumpida
+     */
+    public Response send(HttpClient client, HttpRequest request) throws IOException, InterruptedException {
+        int attempt = 0;
+        while (true) {
+            waitForPause();
+            waitForToken();
+            inFlight.acquire();
+            boolean released = false;
+            try {
+                HttpResponse<InputStream> response;
+                try {
+                    response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+                } catch (IOException ex) {
+                    if (attempt >= maxRetries) {
+                        throw new IOException("Error de red en " + request.uri() + " tras " + (attempt + 1) + " intentos: " + ex.getMessage(), ex);
+                    }
+                    release();
+                    released = true;
+                    sleepNanos(backoff(attempt));
+                    attempt++;
+                    continue;
+                }
+
+                int status = response.statusCode();
+                if (!isRetryable(status)) {
+                    released = true;
+                    return new Response(status, response.headers(), new ReleasingInputStream(response.body(), this::release), attempt);
+                }
+                response.body().close();
+                if (attempt >= maxRetries) {
+                    throw new IOException("HTTP " + status + " en " + request.uri() + " tras " + (attempt + 1) + " intentos");
+                }
+                release();
+                released = true;
+
+                long delay = backoff(attempt);
+                Optional<Long> retryAfter = retryAfterNanos(response.headers());
+                if (retryAfter.isPresent()) {
+                    if (retryAfter.get() > maxDelayNanos) {
+                        throw new IOException("HTTP " + status + " en " + request.uri() + ": el servidor pide esperar "
+                                + TimeUnit.NANOSECONDS.toSeconds(retryAfter.get()) + " s (Retry-After), más que la espera máxima de "
+                                + TimeUnit.NANOSECONDS.toSeconds(maxDelayNanos) + " s");
+                    }
+                    delay = Math.max(delay, retryAfter.get());
+                    pauseAll(delay);
+                }
+                sleepNanos(delay);
+                attempt++;
+            } finally {
+                if (!released) {
+                    release();
+                }
+            }
+        }
+    }
+
+    private void release() {
+        inFlight.release();
+    }
+
+    /**
+     * 429 (demasiadas peticiones) y los 5xx de sobrecarga o fallo temporal.
+     */
+    private static boolean isRetryable(int status) {
+        return status == 429 || status == 500 || status == 502 || status == 503 || status == 504;
+    }
+
+    /**
+     * Espera con "full jitter": un valor al azar entre 0 y base * 2^intento, con tope.
+     */
+    private long backoff(int attempt) {
+        long ceiling = baseDelayNanos << Math.min(attempt, 30);
+        if (ceiling <= 0 || ceiling > maxDelayNanos) {
+            ceiling = maxDelayNanos;
+        }
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * Lee Retry-After, que puede ser un número de segundos o una fecha HTTP.
+     */
+    static Optional<Long> retryAfterNanos(HttpHeaders headers) {
+        Optional<String> value = headers.firstValue("Retry-After");
+        if (value.isEmpty()) {
+            return Optional.empty();
+        }
+        String v = value.get().trim();
+        try {
+            return Optional.of(TimeUnit.SECONDS.toNanos(Math.max(0, Long.parseLong(v))));
+        } catch (NumberFormatException ex) {
+            try {
+                ZonedDateTime when = ZonedDateTime.parse(v, DateTimeFormatter.RFC_1123_DATE_TIME);
+                long millis = when.toInstant().toEpochMilli() - System.currentTimeMillis();
+                return Optional.of(TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis)));
+            } catch (DateTimeParseException ignored) {
+                return Optional.empty();
+            }
+        }
+    }
+
+    private void pauseAll(long nanos) {
+        long until = System.nanoTime() + nanos;
+        synchronized (this) {
+            if (until - pausedUntil > 0) {
+                pausedUntil = until;
+            }
+        }
+    }
+
+    /**
+     * @return Lo que queda de la pausa común pedida con Retry-After, en nanosegundos (0 si no hay pausa)
+     */
+    long remainingPauseNanos() {
+        long until = pausedUntil;
+        long wait = until - System.nanoTime();
+        return until != 0 && wait > 0 ? wait : 0;
+    }
+
+    private void waitForPause() throws InterruptedException {
+        sleepNanos(remainingPauseNanos());
+    }
+
+    /**
+     * Toma un token del cubo; si no hay, reserva el siguiente y espera a que llegue.
+     */
+    private void waitForToken() throws InterruptedException {
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - lastRefill) * ratePerNano);
+            lastRefill = now;
+            tokens -= 1;
+            wait = tokens >= 0 ? 0 : (long) (-tokens / ratePerNano);
+        }
+        sleepNanos(wait);
+    }
+
+    private static void sleepNanos(long nanos) throws InterruptedException {
+        if (nanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+    }
+
+    /**
+     * Cuerpo de la respuesta que libera el hueco de petición en curso al cerrarse (una sola vez).
+     */
+    private static final class ReleasingInputStream extends FilterInputStream {
+        private final Runnable onClose;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private ReleasingInputStream(InputStream in, Runnable onClose) {
+            super(in);
+            this.onClose = onClose;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed.compareAndSet(false, true)) {
+                try {
+                    super.close();
+                } finally {
+                    onClose.run();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package utils;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Convierte la fila actual de un ResultSet en un objeto. No debe mover el cursor.
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+    T map(ResultSet rs) throws SQLException;
+}
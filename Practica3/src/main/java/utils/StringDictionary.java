@@ -0,0 +1,82 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Diccionario de cadenas para columnas con pocos valores distintos ("Alive", "Human", "Male", dimensiones...).
+ * Cada valor distinto se guarda una sola vez y las filas guardan solo su código (un int).
+ * El código -1 representa NULL.
+ */
+public class StringDictionary {
+
+    public static final int NULL_CODE = -1;
+
+    private final Map<String, Integer> codes = new HashMap<>();
+    private String[] values = new String[16];
+    private int size;
+
+    /**
+     * Devuelve el código del valor, añadiéndolo si es nuevo.
+     * @param value Valor (puede ser null)
+     * @return Código del valor, o {@link #NULL_CODE}
+     */
+    public int encode(String value) {
+        if (value == null) {
+            return NULL_CODE;
+        }
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size] = value;
+        codes.put(value, size);
+        return size++;
+    }
+
+    /**
+     * @param code Código devuelto por {@link #encode(String)}
+     * @return El valor (la misma instancia para todas las filas), o null
+     */
+    public String decode(int code) {
+        return code == NULL_CODE ? null : values[code];
+    }
+
+    /** @return Número de valores distintos */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Estimación de la memoria ocupada: cada cadena una vez, el array de valores y el mapa de códigos.
+     * @return Bytes aproximados
+     */
+    public long footprintBytes() {
+        long bytes = 16 + 4L * values.length;
+        for (int i = 0; i < size; i++) {
+            bytes += stringBytes(values[i]);
+        }
+        // Entrada del HashMap (32) y el Integer del código (16), más la tabla del mapa
+        return bytes + size * 48L + 4L * Math.max(16, Integer.highestOneBit(Math.max(1, size)) * 2);
+    }
+
+    /**
+     * Estimación de lo que ocupa un String: cabecera y campos (24), y su array de bytes
+     * (16 de cabecera y un byte por carácter si es Latin-1, dos si no).
+     */
+    public static long stringBytes(String s) {
+        if (s == null) {
+            return 0;
+        }
+        boolean latin1 = true;
+        for (int i = 0; i < s.length() && latin1; i++) {
+            latin1 = s.charAt(i) <= 0xFF;
+        }
+        long array = 16 + (latin1 ? s.length() : 2L * s.length());
+        return 24 + ((array + 7) & ~7L);
+    }
+}
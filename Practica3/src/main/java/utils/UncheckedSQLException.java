@@ -0,0 +1,20 @@
+package utils;
+
+import java.sql.SQLException;
+
+/**
+ * SQLException envuelta para poder lanzarla desde un Stream (ver {@link DBUtils#stream}).
+ */
+public class UncheckedSQLException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UncheckedSQLException(SQLException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized SQLException getCause() {
+        return (SQLException) super.getCause();
+    }
+}
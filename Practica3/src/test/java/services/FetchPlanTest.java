@@ -0,0 +1,122 @@
+package services;
+
+import models.Character;
+import models.CharacterSummary;
+import utils.DBUtils;
+import utils.HibernateUtils;
+
+import org.hibernate.Session;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Comprueba que los listados y búsquedas lanzan un número fijo de sentencias, sea cual sea el número
+ * de filas que devuelven (sin consultas N+1 por cada personaje, localización o episodio).
+ * Necesita la BD de la práctica con datos cargados; si no está disponible se omite.
+ */
+class FetchPlanTest {
+
+    private static Statistics stats;
+
+    @BeforeAll
+    static void setUp() {
+        try (Connection con = DBUtils.getConnection()) {
+            Assumptions.assumeTrue(con.isValid(2), "BD no disponible");
+        } catch (Exception e) {
+            Assumptions.abort("BD no disponible: " + e.getMessage());
+        }
+        stats = HibernateUtils.getStatistics();
+        stats.setStatisticsEnabled(true);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        HibernateUtils.shutdown();
+    }
+
+    @BeforeEach
+    void reset() {
+        HibernateUtils.evictCache();
+        stats.clear();
+    }
+
+    /**
+     * @return Sentencias preparadas al ejecutar la acción
+     */
+    private static <T> long statements(Supplier<T> action) {
+        long before = stats.getPrepareStatementCount();
+        action.get();
+        return stats.getPrepareStatementCount() - before;
+    }
+
+    @Test
+    void paginaDePersonajesEsUnaSentencia() {
+        List<CharacterSummary> todos = CharacterService.obtenerPaginaDePersonajes(Integer.MIN_VALUE, Integer.MAX_VALUE);
+        Assumptions.assumeTrue(todos.size() > 1, "No hay personajes cargados");
+
+        assertEquals(1, statements(() -> CharacterService.obtenerPaginaDePersonajes(Integer.MIN_VALUE, 1)));
+        assertEquals(1, statements(() -> CharacterService.obtenerPaginaDePersonajes(Integer.MIN_VALUE, todos.size())));
+    }
+
+    @Test
+    void busquedaPorNombreEsUnaSentencia() {
+        // texto estrecho (pocas o ninguna fila) y texto amplio (casi todas)
+        assertEquals(1, statements(() -> CharacterService.obtenerPersonajesPorNombre("Rick Sanchez")));
+        assertEquals(1, statements(() -> CharacterService.obtenerPersonajesPorNombre("a")));
+    }
+
+    @Test
+    void personajesSinEpisodiosEsUnaSentencia() {
+        assertEquals(1, statements(CharacterService::obtenerPersonajesSinEpisodios));
+    }
+
+    @Test
+    void paginaDeLocalizacionesEsUnaSentencia() {
+        assertEquals(1, statements(() -> LocationService.obtenerPaginaDeLocalizaciones(Integer.MIN_VALUE, 1)));
+        HibernateUtils.evictCache();
+        assertEquals(1, statements(() -> LocationService.obtenerPaginaDeLocalizaciones(Integer.MIN_VALUE, Integer.MAX_VALUE)));
+    }
+
+    @Test
+    void detalleConEpisodiosEsUnaSentencia() {
+        List<Integer> porEpisodios;
+        try (Session session = HibernateUtils.getReadOnlySession()) {
+            porEpisodios = session.createQuery(
+                    "SELECT c.id FROM Character c JOIN c.episodes e GROUP BY c.id ORDER BY COUNT(e), c.id", Integer.class).list();
+        }
+        Assumptions.assumeTrue(porEpisodios.size() > 1, "No hay personajes con episodios");
+        int pocos = porEpisodios.get(0);
+        int muchos = porEpisodios.get(porEpisodios.size() - 1);
+
+        for (int id : new int[]{pocos, muchos}) {
+            HibernateUtils.evictCache();
+            long n = statements(() -> {
+                try (Session session = HibernateUtils.getReadOnlySession()) {
+                    Character c = CharacterService.buscarConPlan(session, id, "Character.localizacionesYEpisodios");
+                    // recorrer todo lo que muestra el detalle no debe lanzar más consultas
+                    c.getEpisodes().forEach(e -> e.getName());
+                    if (c.getOrigin() != null) {
+                        c.getOrigin().getName();
+                    }
+                    if (c.getLocation() != null) {
+                        c.getLocation().getName();
+                    }
+                    return c;
+                }
+            });
+            assertEquals(1, n, "Personaje " + id);
+        }
+        assertTrue(stats.getEntityLoadCount() > 0);
+    }
+}
@@ -0,0 +1,70 @@
+package utils;
+
+import org.junit.jupiter.api.Test;
+import org.postgresql.copy.CopyIn;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Comprueba la codificación de {@link CopyWriter} sobre un CopyIn falso que guarda los bytes enviados.
+ */
+class CopyWriterTest {
+
+    private final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+
+    private CopyWriter writer() {
+        CopyIn copyIn = (CopyIn) Proxy.newProxyInstance(CopyIn.class.getClassLoader(), new Class<?>[]{CopyIn.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "writeToCopy":
+                            sent.write((byte[]) args[0], (int) args[1], (int) args[2]);
+                            return null;
+                        case "endCopy":
+                            return 0L;
+                        case "isActive":
+                            return false;
+                        default:
+                            return null;
+                    }
+                });
+        return new CopyWriter(copyIn);
+    }
+
+    private byte[] encode(String text) throws Exception {
+        CopyWriter copy = writer();
+        copy.writeText(text);
+        copy.finish();
+        return sent.toByteArray();
+    }
+
+    @Test
+    void codificaIgualQueGetBytes() throws Exception {
+        String text = "Rick Sánchez 🛸 ñ € 日本";
+        assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), encode(text));
+    }
+
+    @Test
+    void escapaLosCaracteresDeControlDeCopy() throws Exception {
+        assertEquals("a\\\\b\\tc\\nd\\re", new String(encode("a\\b\tc\nd\re"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void sustituyeLosSuplentesSinPareja() throws Exception {
+        // suplentes altos seguidos de una letra, un suplente bajo suelto y, al final, un par válido
+        String text = "x\uD83D" + "y\uDE80" + "\uD83Dz" + "🚀";
+        byte[] expected = text.getBytes(StandardCharsets.UTF_8);
+
+        assertArrayEquals(expected, encode(text));
+        assertEquals("x?y??z🚀", new String(expected, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void suplenteAltoAlFinal() throws Exception {
+        assertArrayEquals("abc?".getBytes(StandardCharsets.UTF_8), encode("abc\uD83D"));
+    }
+}
@@ -0,0 +1,230 @@
+package utils;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Prueba los reintentos, la espera exponencial y el tratamiento de 429/Retry-After de {@link RequestScheduler}
+ * contra un servidor HTTP local que responde lo que indique cada prueba.
+ */
+class RequestSchedulerTest {
+
+    /**
+     * Respuesta que dará el servidor a la siguiente petición.
+     */
+    private record Reply(int status, String retryAfter, String body) {
+    }
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final ConcurrentLinkedQueue<Reply> script = new ConcurrentLinkedQueue<>();
+    private final List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+    private volatile Reply otherwise = new Reply(200, null, "ok");
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private URI uri;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            arrivals.add(System.nanoTime());
+            Reply reply = script.poll();
+            if (reply == null) {
+                reply = otherwise;
+            }
+            if (reply.retryAfter() != null) {
+                exchange.getResponseHeaders().add("Retry-After", reply.retryAfter());
+            }
+            byte[] body = reply.body().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(reply.status(), body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.start();
+        uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/character");
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    private static RequestScheduler scheduler(int maxInFlight, int maxRetries, long baseMillis, long maxMillis) {
+        return new RequestScheduler(1000, 100, maxInFlight, maxRetries, Duration.ofMillis(baseMillis), Duration.ofMillis(maxMillis));
+    }
+
+    private RequestScheduler.Response send(RequestScheduler scheduler) throws IOException, InterruptedException {
+        return scheduler.send(client, HttpRequest.newBuilder(uri).GET().build());
+    }
+
+    private static String read(RequestScheduler.Response response) throws IOException {
+        try (InputStream in = response.body()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static long millisBetween(long from, long to) {
+        return TimeUnit.NANOSECONDS.toMillis(to - from);
+    }
+
+    @Test
+    void reintentaLos5xxHastaObtenerRespuesta() throws Exception {
+        script.add(new Reply(503, null, "ocupado"));
+        script.add(new Reply(500, null, "error"));
+
+        RequestScheduler.Response response = send(scheduler(4, 3, 10, 50));
+
+        assertEquals(200, response.statusCode());
+        assertEquals(2, response.retries());
+        assertEquals("ok", read(response));
+        assertEquals(3, arrivals.size());
+    }
+
+    @Test
+    void seRindeAlAgotarLosReintentos() {
+        otherwise = new Reply(502, null, "caído");
+
+        IOException ex = assertThrows(IOException.class, () -> send(scheduler(4, 2, 5, 20)));
+
+        assertTrue(ex.getMessage().contains("HTTP 502"), ex.getMessage());
+        assertEquals(3, arrivals.size());
+    }
+
+    @Test
+    void noReintentaLosErroresDelCliente() throws Exception {
+        script.add(new Reply(404, null, "{\"error\":\"Character not found\"}"));
+
+        RequestScheduler.Response response = send(scheduler(4, 3, 10, 50));
+
+        assertEquals(404, response.statusCode());
+        assertEquals(0, response.retries());
+        read(response);
+        assertEquals(1, arrivals.size());
+    }
+
+    @Test
+    void laEsperaEntreReintentosNoPasaDelMaximo() throws Exception {
+        otherwise = new Reply(503, null, "ocupado");
+        int retries = 6;
+        long maxMillis = 40;
+
+        long start = System.nanoTime();
+        assertThrows(IOException.class, () -> send(scheduler(4, retries, 10, maxMillis)));
+        long elapsed = millisBetween(start, System.nanoTime());
+
+        assertEquals(retries + 1, arrivals.size());
+        // cada espera es como mucho maxMillis; el margen cubre las peticiones en sí
+        assertTrue(elapsed < retries * maxMillis + 1000, "Tardó " + elapsed + " ms");
+    }
+
+    @Test
+    void respetaElRetryAfterDeUn429() throws Exception {
+        script.add(new Reply(429, "1", "demasiadas peticiones"));
+
+        RequestScheduler.Response response = send(scheduler(4, 3, 1, 5000));
+
+        assertEquals(200, response.statusCode());
+        assertEquals(1, response.retries());
+        read(response);
+        assertEquals(2, arrivals.size());
+        long gap = millisBetween(arrivals.get(0), arrivals.get(1));
+        assertTrue(gap >= 950, "Reintentó a los " + gap + " ms");
+    }
+
+    @Test
+    void unRetryAfterMayorQueElMaximoFallaSinEsperar() {
+        script.add(new Reply(429, "120", "demasiadas peticiones"));
+
+        long start = System.nanoTime();
+        IOException ex = assertThrows(IOException.class, () -> send(scheduler(4, 3, 1, 1000)));
+        long elapsed = millisBetween(start, System.nanoTime());
+
+        assertTrue(ex.getMessage().contains("Retry-After"), ex.getMessage());
+        assertEquals(1, arrivals.size());
+        assertTrue(elapsed < 1000, "Tardó " + elapsed + " ms");
+    }
+
+    @Test
+    void unRetryAfterPausaATodasLasPeticiones() throws Exception {
+        script.add(new Reply(429, "1", "demasiadas peticiones"));
+        RequestScheduler scheduler = scheduler(4, 3, 1, 5000);
+
+        RequestScheduler.Response first = send(scheduler);
+        read(first);
+        long start = System.nanoTime();
+        // la primera petición ya ha esperado su segundo; una nueva no tiene que esperar más
+        read(send(scheduler));
+        assertTrue(millisBetween(start, System.nanoTime()) < 900);
+
+        script.add(new Reply(429, "1", "demasiadas peticiones"));
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<RequestScheduler.Response> limited = pool.submit(() -> send(scheduler));
+            // la pausa se fija cuando el cliente ha leído el 429, no cuando el servidor recibe la petición
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (scheduler.remainingPauseNanos() == 0) {
+                assertTrue(System.nanoTime() < deadline, "El 429 no ha pausado el planificador");
+                Thread.sleep(1);
+            }
+            long paused = System.nanoTime();
+            long remaining = scheduler.remainingPauseNanos();
+            // otra petición lanzada durante la pausa no sale hasta que termina
+            read(send(scheduler));
+            long waited = System.nanoTime() - paused;
+            assertTrue(waited >= remaining, "Salió a los " + TimeUnit.NANOSECONDS.toMillis(waited)
+                    + " ms con " + TimeUnit.NANOSECONDS.toMillis(remaining) + " ms de pausa pendientes");
+            read(limited.get(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void unaPeticionCuentaEnCursoHastaCerrarSuCuerpo() throws Exception {
+        RequestScheduler scheduler = scheduler(1, 0, 1, 10);
+        RequestScheduler.Response open = send(scheduler);
+
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<RequestScheduler.Response> waiting = pool.submit(() -> send(scheduler));
+            assertThrows(TimeoutException.class, () -> waiting.get(200, TimeUnit.MILLISECONDS));
+            assertEquals(1, arrivals.size());
+
+            read(open);
+            read(waiting.get(5, TimeUnit.SECONDS));
+            assertEquals(2, arrivals.size());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}